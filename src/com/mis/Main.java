@@ -1,5 +1,7 @@
 package com.mis;
 
+import javax.swing.SwingUtilities;
+
 import com.mis.ui.MainWindow;
 
 /**
@@ -7,7 +9,10 @@ import com.mis.ui.MainWindow;
  */
 public class Main {
     public static void main(String[] args) {
-        MainWindow mainWindow = new MainWindow();
-        mainWindow.setVisible(true);
+        // Swing components are created and shown on the event dispatch thread
+        SwingUtilities.invokeLater(() -> {
+            MainWindow mainWindow = new MainWindow();
+            mainWindow.setVisible(true);
+        });
     }
 } 
\ No newline at end of file
@@ -2,17 +2,17 @@ package com.mis.api;
 
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 import com.mis.db.AnimalDAO;
-import com.mis.db.BoxDAO;
-import com.mis.db.OwnerDAO;
 import com.mis.db.TreatmentDAO;
 import com.mis.model.Animal;
-import com.mis.model.Box;
+import com.mis.model.AnimalRow;
 import com.mis.model.BoxStatus;
-import com.mis.model.Owner;
+import com.mis.model.OverdueTreatment;
 import com.mis.model.Treatment;
+import com.mis.model.TreatmentRow;
 import com.mis.model.TreatmentType;
 
 /**
@@ -20,14 +20,10 @@ import com.mis.model.TreatmentType;
  */
 public class AnimalController {
     private AnimalDAO animalDAO;
-    private BoxDAO boxDAO;
-    private OwnerDAO ownerDAO;
     private TreatmentDAO treatmentDAO;
     
     public AnimalController() {
         this.animalDAO = new AnimalDAO();
-        this.boxDAO = new BoxDAO();
-        this.ownerDAO = new OwnerDAO();
         this.treatmentDAO = new TreatmentDAO();
     }
     
@@ -38,6 +34,27 @@ public class AnimalController {
         return animalDAO.getAll();
     }
     
+    /**
+     * Get the rows of the animal list, without loading the full animals
+     */
+    public List<AnimalRow> getAnimalRows() throws SQLException {
+        return animalDAO.getRows();
+    }
+    
+    /**
+     * Get the IDs of the animal list rows, in list order
+     */
+    public int[] getAnimalRowIds() throws SQLException {
+        return animalDAO.getRowIds();
+    }
+    
+    /**
+     * Get the animal list rows with the given IDs, in no particular order
+     */
+    public List<AnimalRow> getAnimalRowsByIds(Collection<Integer> ids) throws SQLException {
+        return animalDAO.getRowsByIds(ids);
+    }
+    
     /**
      * Get animal by ID
      */
@@ -76,59 +93,25 @@ public class AnimalController {
     }
     
     /**
-     * Assign an animal to an owner
+     * Assign an animal to an owner with a single UPDATE
      */
     public boolean assignOwner(int animalId, int ownerId) throws SQLException {
-        Animal animal = animalDAO.getById(animalId);
-        Owner owner = ownerDAO.getById(ownerId);
-        
-        if (animal != null && owner != null) {
-            animal.setOwner(owner);
-            owner.addAnimal(animal);
-            return animalDAO.update(animal);
-        }
-        
-        return false;
+        return animalDAO.setOwner(animalId, ownerId);
     }
     
     /**
-     * Assign an animal to a box
+     * Assign an animal to a box, releasing the box it was in. The boxes and the
+     * animal are updated in one transaction without loading the animal.
      */
     public boolean assignBox(int animalId, int boxId) throws SQLException {
-        Animal animal = animalDAO.getById(animalId);
-        Box box = boxDAO.getById(boxId);
-        
-        if (animal != null && box != null && box.isAvailable()) {
-            // If animal is already in a box, release it first
-            if (animal.getBox() != null) {
-                Box oldBox = animal.getBox();
-                oldBox.releaseAnimal();
-                boxDAO.update(oldBox);
-            }
-            
-            // Assign to new box
-            box.assignAnimal(animal);
-            boxDAO.update(box);
-            return animalDAO.update(animal);
-        }
-        
-        return false;
+        return animalDAO.moveToBox(animalId, boxId);
     }
     
     /**
      * Release animal from current box
      */
     public boolean releaseFromBox(int animalId) throws SQLException {
-        Animal animal = animalDAO.getById(animalId);
-        
-        if (animal != null && animal.getBox() != null) {
-            Box box = animal.getBox();
-            box.releaseAnimal();
-            boxDAO.update(box);
-            return animalDAO.update(animal);
-        }
-        
-        return false;
+        return animalDAO.moveToBox(animalId, null);
     }
     
     /**
@@ -160,15 +143,29 @@ public class AnimalController {
      * Record that a treatment has been administered
      */
     public boolean administerTreatment(int treatmentId, LocalDate nextDueDate) throws SQLException {
-        Treatment treatment = treatmentDAO.getById(treatmentId);
-        
-        if (treatment != null) {
-            treatment.administer();
-            treatment.setNextDueDate(nextDueDate);
-            return treatmentDAO.update(treatment);
-        }
-        
-        return false;
+        return treatmentDAO.markAdministered(treatmentId, LocalDate.now(), nextDueDate);
+    }
+    
+    /**
+     * Get the rows of the treatment list, for one animal or all of them when
+     * animalId is null
+     */
+    public List<TreatmentRow> getTreatmentRows(Integer animalId) throws SQLException {
+        return treatmentDAO.getRows(animalId);
+    }
+    
+    /**
+     * Get the IDs of the treatment list rows, in list order
+     */
+    public int[] getTreatmentRowIds(Integer animalId) throws SQLException {
+        return treatmentDAO.getRowIds(animalId);
+    }
+    
+    /**
+     * Get the treatment list rows with the given IDs, in no particular order
+     */
+    public List<TreatmentRow> getTreatmentRowsByIds(Collection<Integer> ids) throws SQLException {
+        return treatmentDAO.getRowsByIds(ids);
     }
     
     /**
@@ -177,4 +174,12 @@ public class AnimalController {
     public List<Animal> getAnimalsWithOverdueTreatments() throws SQLException {
         return animalDAO.getAllWithOverdueTreatments();
     }
+    
+    /**
+     * Get the overdue treatments with the name and species of their animal,
+     * without loading the animals themselves
+     */
+    public List<OverdueTreatment> getOverdueTreatments() throws SQLException {
+        return treatmentDAO.getOverdue(LocalDate.now());
+    }
 } 
\ No newline at end of file
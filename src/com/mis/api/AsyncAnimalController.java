@@ -0,0 +1,116 @@
+package com.mis.api;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.mis.db.DatabaseExecutor;
+import com.mis.model.Animal;
+import com.mis.model.AnimalRow;
+import com.mis.model.OverdueTreatment;
+import com.mis.model.Treatment;
+import com.mis.model.TreatmentRow;
+import com.mis.model.TreatmentType;
+
+/**
+ * Non-blocking version of {@link AnimalController}: every operation runs on
+ * the {@link DatabaseExecutor} and returns a future, completed exceptionally
+ * with the SQLException if the operation fails. Results are delivered on a
+ * database thread; Swing code should continue with
+ * {@code thenAcceptAsync(..., SwingUtilities::invokeLater)}.
+ */
+public class AsyncAnimalController {
+    private final AnimalController controller;
+    private final DatabaseExecutor executor;
+    
+    public AsyncAnimalController() {
+        this(new AnimalController(), DatabaseExecutor.getInstance());
+    }
+    
+    public AsyncAnimalController(AnimalController controller, DatabaseExecutor executor) {
+        this.controller = controller;
+        this.executor = executor;
+    }
+    
+    /**
+     * The blocking controller the operations delegate to
+     */
+    public AnimalController getController() {
+        return controller;
+    }
+    
+    public CompletableFuture<List<Animal>> getAllAnimals() {
+        return executor.submit(controller::getAllAnimals);
+    }
+    
+    public CompletableFuture<List<AnimalRow>> getAnimalRows() {
+        return executor.submit(controller::getAnimalRows);
+    }
+    
+    public CompletableFuture<int[]> getAnimalRowIds() {
+        return executor.submit(controller::getAnimalRowIds);
+    }
+    
+    public CompletableFuture<List<AnimalRow>> getAnimalRowsByIds(Collection<Integer> ids) {
+        return executor.submit(() -> controller.getAnimalRowsByIds(ids));
+    }
+    
+    public CompletableFuture<Animal> getAnimalById(int id) {
+        return executor.submit(() -> controller.getAnimalById(id));
+    }
+    
+    public CompletableFuture<Animal> createAnimal(String name, String species, String breed,
+                                                  LocalDate birthDate, String gender) {
+        return executor.submit(() -> controller.createAnimal(name, species, breed, birthDate, gender));
+    }
+    
+    public CompletableFuture<Boolean> updateAnimal(Animal animal) {
+        return executor.submit(() -> controller.updateAnimal(animal));
+    }
+    
+    public CompletableFuture<Boolean> deleteAnimal(int id) {
+        return executor.submit(() -> controller.deleteAnimal(id));
+    }
+    
+    public CompletableFuture<Boolean> assignOwner(int animalId, int ownerId) {
+        return executor.submit(() -> controller.assignOwner(animalId, ownerId));
+    }
+    
+    public CompletableFuture<Boolean> assignBox(int animalId, int boxId) {
+        return executor.submit(() -> controller.assignBox(animalId, boxId));
+    }
+    
+    public CompletableFuture<Boolean> releaseFromBox(int animalId) {
+        return executor.submit(() -> controller.releaseFromBox(animalId));
+    }
+    
+    public CompletableFuture<Treatment> addTreatment(int animalId, TreatmentType type, String name,
+                                                     String description, LocalDate nextDueDate) {
+        return executor.submit(() -> controller.addTreatment(animalId, type, name, description, nextDueDate));
+    }
+    
+    public CompletableFuture<Boolean> administerTreatment(int treatmentId, LocalDate nextDueDate) {
+        return executor.submit(() -> controller.administerTreatment(treatmentId, nextDueDate));
+    }
+    
+    public CompletableFuture<List<TreatmentRow>> getTreatmentRows(Integer animalId) {
+        return executor.submit(() -> controller.getTreatmentRows(animalId));
+    }
+    
+    public CompletableFuture<int[]> getTreatmentRowIds(Integer animalId) {
+        return executor.submit(() -> controller.getTreatmentRowIds(animalId));
+    }
+    
+    public CompletableFuture<List<TreatmentRow>> getTreatmentRowsByIds(Collection<Integer> ids) {
+        return executor.submit(() -> controller.getTreatmentRowsByIds(ids));
+    }
+    
+    public CompletableFuture<List<Animal>> getAnimalsWithOverdueTreatments() {
+        return executor.submit(controller::getAnimalsWithOverdueTreatments);
+    }
+    
+    public CompletableFuture<List<OverdueTreatment>> getOverdueTreatments() {
+        return executor.submit(controller::getOverdueTreatments);
+    }
+}
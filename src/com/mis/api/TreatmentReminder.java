@@ -0,0 +1,40 @@
+package com.mis.api;
+
+import com.mis.model.OverdueTreatment;
+
+/**
+ * A reminder fired by the {@link TreatmentReminderEngine} when a treatment
+ * becomes due, or overdue
+ */
+public final class TreatmentReminder {
+    public enum Kind {
+        /** The next due date is today */
+        DUE,
+        /** The next due date has passed */
+        OVERDUE
+    }
+
+    private final Kind kind;
+    private final OverdueTreatment treatment;
+
+    TreatmentReminder(Kind kind, OverdueTreatment treatment) {
+        this.kind = kind;
+        this.treatment = treatment;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * The treatment, with its due date and the name and species of its animal
+     */
+    public OverdueTreatment getTreatment() {
+        return treatment;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + treatment.getName() + " #" + treatment.getTreatmentId() + " on " + treatment.getNextDueDate();
+    }
+}
@@ -0,0 +1,270 @@
+package com.mis.api;
+
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.mis.db.EntityChangeEvent;
+import com.mis.db.EntityEvents;
+import com.mis.db.TreatmentDAO;
+import com.mis.model.OverdueTreatment;
+import com.mis.model.Treatment;
+
+/**
+ * Fires a reminder when a treatment becomes due, on its next due date, and
+ * another when it becomes overdue, the day after.
+ * <p>
+ * Every treatment with a next due date is read once when the engine starts
+ * and kept in a priority queue ordered by the day its next reminder fires;
+ * treatments already overdue then are reminded right away. After that the
+ * engine follows the {@link EntityEvents} of treatments and re-reads only the
+ * treatment that changed, so a change costs O(log n) instead of a rescan.
+ * Saving or deleting an animal with its treatments announces each
+ * treatment; only bulk imports read them all again.
+ * <p>
+ * The queue lives on a single timer thread, which sleeps until the next
+ * reminder is due. Listeners run on that thread.
+ */
+public class TreatmentReminderEngine {
+    // Upper bound on a wait, so that a change of the system clock or time zone is noticed
+    private static final long MAX_WAIT_MILLIS = TimeUnit.HOURS.toMillis(1);
+    // Superseded entries are left in the queue; it is rebuilt when they outnumber the live ones
+    private static final int MIN_COMPACT_SIZE = 1024;
+
+    private static final Comparator<OverdueTreatment> REPORT_ORDER =
+            Comparator.comparingInt(OverdueTreatment::getAnimalId)
+                    .thenComparing(OverdueTreatment::getNextDueDate)
+                    .thenComparingInt(OverdueTreatment::getTreatmentId);
+
+    private final TreatmentDAO treatmentDAO;
+    private final Clock clock;
+    private final ScheduledExecutorService timer;
+    private final List<Consumer<List<TreatmentReminder>>> listeners = new CopyOnWriteArrayList<>();
+    private final Consumer<EntityChangeEvent> treatmentListener = this::treatmentChanged;
+
+    // Only touched on the timer thread
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(Comparator.comparing((Entry entry) -> entry.fireDate));
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private ScheduledFuture<?> wakeUp;
+
+    /**
+     * The next reminder of a treatment; replaced, never changed, when the
+     * treatment changes, so that the queue can tell superseded entries apart
+     */
+    private static final class Entry {
+        final OverdueTreatment treatment;
+        // Null once the overdue reminder has fired
+        final TreatmentReminder.Kind kind;
+        final LocalDate fireDate;
+
+        Entry(OverdueTreatment treatment, TreatmentReminder.Kind kind, LocalDate fireDate) {
+            this.treatment = treatment;
+            this.kind = kind;
+            this.fireDate = fireDate;
+        }
+    }
+
+    public TreatmentReminderEngine() {
+        this(new TreatmentDAO(), Clock.systemDefaultZone());
+    }
+
+    public TreatmentReminderEngine(TreatmentDAO treatmentDAO, Clock clock) {
+        this.treatmentDAO = treatmentDAO;
+        this.clock = clock;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "treatment-reminders");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Receive the reminders fired together, ordered by animal and due date
+     */
+    public void addListener(Consumer<List<TreatmentReminder>> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<List<TreatmentReminder>> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Read the treatments and start firing reminders
+     *
+     * @return completed with the number of treatments with a due date once
+     *         they are read, or with the SQLException if they cannot be
+     */
+    public CompletableFuture<Integer> start() {
+        CompletableFuture<Integer> started = new CompletableFuture<>();
+        // Changes committed while the treatments are read are applied after them
+        EntityEvents.subscribe(Treatment.class, treatmentListener);
+        timer.execute(() -> {
+            try {
+                reloadAll();
+                started.complete(entries.size());
+            } catch (SQLException e) {
+                started.completeExceptionally(e);
+            }
+        });
+        return started;
+    }
+
+    /**
+     * Stop following the treatments and firing reminders
+     */
+    public void stop() {
+        EntityEvents.unsubscribe(Treatment.class, treatmentListener);
+        timer.shutdownNow();
+    }
+
+    private void treatmentChanged(EntityChangeEvent event) {
+        if (timer.isShutdown()) {
+            return;
+        }
+        timer.execute(() -> {
+            try {
+                switch (event.getKind()) {
+                    case INSERTED:
+                    case UPDATED:
+                        reload(event.getId());
+                        break;
+                    case DELETED:
+                        remove(event.getId());
+                        break;
+                    default:
+                        reloadAll();
+                        return;
+                }
+                fireDue();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private void reloadAll() throws SQLException {
+        List<OverdueTreatment> treatments = treatmentDAO.getScheduled();
+
+        // Treatments whose due date did not change keep the reminders already fired
+        Map<Integer, Entry> previous = new HashMap<>(entries);
+        entries.clear();
+        queue.clear();
+        for (OverdueTreatment treatment : treatments) {
+            schedule(treatment, previous.get(treatment.getTreatmentId()));
+        }
+        fireDue();
+    }
+
+    private void reload(int treatmentId) throws SQLException {
+        OverdueTreatment treatment = treatmentDAO.getScheduledById(treatmentId);
+        if (treatment == null) {
+            // Deleted, or no longer has a due date
+            remove(treatmentId);
+        } else {
+            schedule(treatment, entries.get(treatmentId));
+        }
+    }
+
+    private void schedule(OverdueTreatment treatment, Entry current) {
+        LocalDate dueDate = treatment.getNextDueDate();
+        if (current != null && current.treatment.getNextDueDate().equals(dueDate)) {
+            // Same due date: the reminders already fired are not fired again
+            put(new Entry(treatment, current.kind, current.fireDate));
+        } else if (dueDate.isBefore(LocalDate.now(clock))) {
+            put(new Entry(treatment, TreatmentReminder.Kind.OVERDUE, LocalDate.now(clock)));
+        } else {
+            put(new Entry(treatment, TreatmentReminder.Kind.DUE, dueDate));
+        }
+    }
+
+    private void put(Entry entry) {
+        entries.put(entry.treatment.getTreatmentId(), entry);
+        if (entry.kind != null) {
+            queue.add(entry);
+        }
+        if (queue.size() > MIN_COMPACT_SIZE && queue.size() > 2 * entries.size()) {
+            queue.clear();
+            for (Entry live : entries.values()) {
+                if (live.kind != null) {
+                    queue.add(live);
+                }
+            }
+        }
+    }
+
+    private void remove(int treatmentId) {
+        // Its queue entry is skipped when it comes up
+        entries.remove(treatmentId);
+    }
+
+    /**
+     * Fire the reminders due by today, then sleep until the next one
+     */
+    private void fireDue() {
+        LocalDate today = LocalDate.now(clock);
+        List<TreatmentReminder> fired = new ArrayList<>();
+
+        while (!queue.isEmpty() && !queue.peek().fireDate.isAfter(today)) {
+            Entry entry = queue.poll();
+            OverdueTreatment treatment = entry.treatment;
+            if (entries.get(treatment.getTreatmentId()) != entry) {
+                continue;
+            }
+
+            if (entry.kind == TreatmentReminder.Kind.DUE && !treatment.getNextDueDate().isBefore(today)) {
+                fired.add(new TreatmentReminder(TreatmentReminder.Kind.DUE, treatment));
+                put(new Entry(treatment, TreatmentReminder.Kind.OVERDUE, treatment.getNextDueDate().plusDays(1)));
+            } else {
+                // A due reminder missed while the engine was not running is fired as overdue
+                fired.add(new TreatmentReminder(TreatmentReminder.Kind.OVERDUE, treatment));
+                put(new Entry(treatment, null, null));
+            }
+        }
+
+        if (!fired.isEmpty()) {
+            fired.sort(Comparator.comparing(TreatmentReminder::getTreatment, REPORT_ORDER));
+            deliver(fired);
+        }
+        scheduleWakeUp();
+    }
+
+    private void scheduleWakeUp() {
+        if (wakeUp != null) {
+            wakeUp.cancel(false);
+            wakeUp = null;
+        }
+        if (queue.isEmpty() || timer.isShutdown()) {
+            return;
+        }
+
+        long wait = Duration.between(clock.instant(), queue.peek().fireDate.atStartOfDay(clock.getZone())).toMillis();
+        wakeUp = timer.schedule(this::fireDue, Math.max(0, Math.min(wait, MAX_WAIT_MILLIS)), TimeUnit.MILLISECONDS);
+    }
+
+    private void deliver(List<TreatmentReminder> reminders) {
+        List<TreatmentReminder> unmodifiable = Collections.unmodifiableList(reminders);
+        for (Consumer<List<TreatmentReminder>> listener : listeners) {
+            try {
+                listener.accept(unmodifiable);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -7,177 +7,499 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import com.mis.model.Animal;
+import com.mis.model.AnimalRow;
 import com.mis.model.Box;
+import com.mis.model.BoxStatus;
+import com.mis.model.DirtyTracker;
 import com.mis.model.Owner;
 import com.mis.model.Treatment;
+import com.mis.model.TreatmentType;
 
 /**
  * Data Access Object for Animal entities
  */
 public class AnimalDAO {
-    private Connection connection;
+    private static final String INSERT_QUERY = "INSERT INTO animals (name, species, breed, birth_date, gender, owner_id, box_id) " +
+                                               "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    
+    private static final EntityCache<Animal> CACHE = EntityCache.create("animals", AnimalDAO::detach);
+    
     private TreatmentDAO treatmentDAO;
     private BoxDAO boxDAO;
     private OwnerDAO ownerDAO;
     
     public AnimalDAO() {
-        this.connection = DatabaseConnection.getInstance().getConnection();
         this.treatmentDAO = new TreatmentDAO();
         this.boxDAO = new BoxDAO();
         this.ownerDAO = new OwnerDAO();
     }
     
+    /**
+     * The cache in front of getById, shared by all Animal DAOs. It holds the
+     * treatments of each animal and the IDs of its owner and box.
+     */
+    public static EntityCache<Animal> getCache() {
+        return CACHE;
+    }
+    
     /**
      * Save a new animal to the database
      */
     public int save(Animal animal) throws SQLException {
-        String query = "INSERT INTO animals (name, species, breed, birth_date, gender, owner_id, box_id) " +
-                       "VALUES (?, ?, ?, ?, ?, ?, ?)";
-        
-        try (PreparedStatement stmt = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setString(1, animal.getName());
-            stmt.setString(2, animal.getSpecies());
-            stmt.setString(3, animal.getBreed());
-            stmt.setString(4, animal.getBirthDate() != null ? animal.getBirthDate().toString() : null);
-            stmt.setString(5, animal.getGender());
-            
-            // Set owner ID if available
-            if (animal.getOwner() != null) {
-                stmt.setInt(6, animal.getOwner().getId());
-            } else {
-                stmt.setNull(6, java.sql.Types.INTEGER);
-            }
-            
-            // Set box ID if available
-            if (animal.getBox() != null) {
-                stmt.setInt(7, animal.getBox().getId());
-            } else {
-                stmt.setNull(7, java.sql.Types.INTEGER);
-            }
-            
-            int affectedRows = stmt.executeUpdate();
-            
-            if (affectedRows == 0) {
-                throw new SQLException("Creating animal failed, no rows affected.");
-            }
-            
-            try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    int animalId = generatedKeys.getInt(1);
-                    animal.setId(animalId);
-                    
-                    // Save treatments if available
-                    if (animal.getTreatments() != null && !animal.getTreatments().isEmpty()) {
-                        for (Treatment treatment : animal.getTreatments()) {
-                            treatment.setId(treatmentDAO.save(animalId, treatment));
+        // The animal and its treatments are committed together
+        return DatabaseConnection.getInstance().inTransaction(connection -> {
+            try (PreparedStatement stmt = connection.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS)) {
+                bindInsert(stmt, animal);
+                
+                int affectedRows = stmt.executeUpdate();
+                
+                if (affectedRows == 0) {
+                    throw new SQLException("Creating animal failed, no rows affected.");
+                }
+                
+                try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        int animalId = generatedKeys.getInt(1);
+                        animal.setId(animalId);
+                        EntityEvents.inserted(Animal.class, animalId);
+                        
+                        // Save treatments if available, in one batch
+                        if (animal.getTreatments() != null && !animal.getTreatments().isEmpty()) {
+                            treatmentDAO.saveAll(animalId, animal.getTreatments());
                         }
+                        
+                        return animalId;
+                    } else {
+                        throw new SQLException("Creating animal failed, no ID obtained.");
                     }
-                    
-                    return animalId;
-                } else {
-                    throw new SQLException("Creating animal failed, no ID obtained.");
                 }
             }
+        });
+    }
+    
+    /**
+     * Save many new animals and their treatments in a single transaction, using
+     * one JDBC batch for the animals and one for all of their treatments. The
+     * generated IDs are set on the animals and treatments.
+     *
+     * @return the number of animals saved
+     */
+    public int saveAll(Collection<Animal> animals) throws SQLException {
+        if (animals.isEmpty()) {
+            return 0;
         }
+        
+        return DatabaseConnection.getInstance().inTransaction(connection -> {
+            int saved = SqlHelper.insertBatch(connection, INSERT_QUERY, animals, this::bindInsert, Animal::setId);
+            
+            // Cascade the treatments of every animal in one batch
+            List<Treatment> treatments = new ArrayList<>();
+            Map<Treatment, Integer> animalIds = new IdentityHashMap<>();
+            for (Animal animal : animals) {
+                if (animal.getTreatments() != null) {
+                    for (Treatment treatment : animal.getTreatments()) {
+                        treatments.add(treatment);
+                        animalIds.put(treatment, animal.getId());
+                    }
+                }
+            }
+            treatmentDAO.saveAll(treatments, animalIds);
+            EntityEvents.bulk(Animal.class);
+            
+            return saved;
+        });
     }
     
     /**
      * Get an animal by ID
      */
     public Animal getById(int id) throws SQLException {
+        Animal cached = IdentityMap.lookup(Animal.class, id);
+        if (cached != null) {
+            return cached;
+        }
+        
+        cached = CACHE.get(id);
+        if (cached != null) {
+            return attach(cached);
+        }
+        
         String query = "SELECT * FROM animals WHERE id = ?";
+        AnimalGraphLoader loader = newGraphLoader();
+        long stamp = CACHE.stamp();
         
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
             stmt.setInt(1, id);
             
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    Animal animal = mapResultSetToAnimal(rs);
-                    
-                    // Get treatments
-                    animal.setTreatments(treatmentDAO.getAllByAnimalId(id));
-                    
-                    return animal;
+                    loader.add(mapResultSetToAnimal(rs), rs);
                 }
             }
         }
         
-        return null;
+        List<Animal> animals = loader.load();
+        if (animals.isEmpty()) {
+            return null;
+        }
+        
+        CACHE.put(id, animals.get(0), stamp);
+        return animals.get(0);
     }
     
     /**
-     * Get all animals
+     * Get all animals, with their owners, boxes and treatments loaded in batches
      */
     public List<Animal> getAll() throws SQLException {
         String query = "SELECT * FROM animals";
-        List<Animal> animals = new ArrayList<>();
+        AnimalGraphLoader loader = newGraphLoader();
         
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(query);
+             ResultSet rs = stmt.executeQuery()) {
             
             while (rs.next()) {
-                Animal animal = mapResultSetToAnimal(rs);
-                
-                // Get treatments
-                animal.setTreatments(treatmentDAO.getAllByAnimalId(animal.getId()));
-                
-                animals.add(animal);
+                loader.add(mapResultSetToAnimal(rs), rs);
             }
         }
         
-        return animals;
+        return loader.load();
+    }
+    
+    /**
+     * Get one page of animals, with owners, boxes and treatments, using keyset
+     * pagination on the primary key
+     *
+     * @param afterId continuation token from the previous page, or null for the first page
+     */
+    public Page<Animal> page(Integer afterId, int limit, Page.Sort sort) throws SQLException {
+        AnimalGraphLoader loader = newGraphLoader();
+        boolean hasNext = false;
+        
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(SqlHelper.keysetQuery("animals", sort))) {
+            SqlHelper.bindKeyset(stmt, afterId, limit, sort);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                // Only load associations for the rows that make it into the page
+                for (int i = 0; i < limit && rs.next(); i++) {
+                    loader.add(mapResultSetToAnimal(rs), rs);
+                }
+                hasNext = rs.next();
+            }
+        }
+        
+        List<Animal> animals = loader.load();
+        return new Page<>(animals, hasNext ? animals.get(animals.size() - 1).getId() : null);
+    }
+    
+    /**
+     * Stream all animals straight from a live ResultSet. Rows are read fetchSize
+     * at a time and each chunk gets its owners, boxes and treatments in batched
+     * queries, so memory stays bounded by the chunk size. The stream holds a
+     * pooled connection until it is exhausted or closed, so use it in a
+     * try-with-resources block.
+     */
+    public Stream<Animal> stream(int fetchSize) throws SQLException {
+        return Cursor.open("SELECT * FROM animals", fetchSize).streamChunks(fetchSize, this::readChunk);
+    }
+    
+    /**
+     * Stream all animals with the default fetch size
+     */
+    public Stream<Animal> stream() throws SQLException {
+        return stream(Cursor.DEFAULT_FETCH_SIZE);
+    }
+    
+    /**
+     * Process every animal in constant memory; the cursor is always closed
+     */
+    public void forEach(Consumer<? super Animal> action) throws SQLException {
+        Cursor.forEach(stream(), action);
     }
     
     /**
      * Get all animals that have overdue treatments
      */
     public List<Animal> getAllWithOverdueTreatments() throws SQLException {
-        List<Animal> allAnimals = getAll();
-        List<Animal> animalsWithOverdueTreatments = new ArrayList<>();
+        // Filter in SQL through the due date index instead of loading every animal
+        StorageFormat storage = StorageFormat.current();
+        String query = "SELECT * FROM animals WHERE id IN (SELECT animal_id FROM treatments " +
+                      "WHERE " + storage.dateBefore("next_due_date") + ")";
+        AnimalGraphLoader loader = newGraphLoader();
         
-        for (Animal animal : allAnimals) {
-            if (!animal.getOverdueTreatments().isEmpty()) {
-                animalsWithOverdueTreatments.add(animal);
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
+            stmt.setObject(1, storage.date(LocalDate.now()));
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    loader.add(mapResultSetToAnimal(rs), rs);
+                }
             }
         }
         
-        return animalsWithOverdueTreatments;
+        return loader.load();
     }
     
     /**
-     * Update an animal in the database
+     * Get one row per animal for list views, with the owner and box names and
+     * the vaccination status computed by a single query
      */
-    public boolean update(Animal animal) throws SQLException {
-        String query = "UPDATE animals SET name = ?, species = ?, breed = ?, birth_date = ?, " +
-                      "gender = ?, owner_id = ?, box_id = ? WHERE id = ?";
-        
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, animal.getName());
-            stmt.setString(2, animal.getSpecies());
-            stmt.setString(3, animal.getBreed());
-            stmt.setString(4, animal.getBirthDate() != null ? animal.getBirthDate().toString() : null);
-            stmt.setString(5, animal.getGender());
-            
-            // Set owner ID if available
-            if (animal.getOwner() != null) {
-                stmt.setInt(6, animal.getOwner().getId());
+    public List<AnimalRow> getRows() throws SQLException {
+        StorageFormat storage = StorageFormat.current();
+        
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(rowQuery(storage, "", "ORDER BY a.id"))) {
+            return readRows(stmt, storage);
+        }
+    }
+    
+    /**
+     * Get the IDs of every animal in the order of {@link #getRows()}, so that
+     * a list view can count its rows and load only those it shows
+     */
+    public int[] getRowIds() throws SQLException {
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement("SELECT id FROM animals ORDER BY id")) {
+            return SqlHelper.readIds(stmt);
+        }
+    }
+    
+    /**
+     * Get the list view rows of the animals with the given IDs, in no
+     * particular order; IDs of deleted animals are skipped
+     */
+    public List<AnimalRow> getRowsByIds(Collection<Integer> ids) throws SQLException {
+        StorageFormat storage = StorageFormat.current();
+        List<AnimalRow> rows = new ArrayList<>(ids.size());
+        
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection()) {
+            for (List<Integer> chunk : SqlHelper.partition(ids)) {
+                String query = rowQuery(storage, "", "WHERE a.id IN (" + SqlHelper.placeholders(chunk.size()) + ")");
+                
+                try (PreparedStatement stmt = connection.prepareStatement(query)) {
+                    SqlHelper.bindIds(stmt, 3, chunk);
+                    rows.addAll(readRows(stmt, storage));
+                }
+            }
+        }
+        
+        return rows;
+    }
+    
+    /**
+     * Search animals by name, species or breed, best matches first. Every word
+     * of the text must be the start of a word of the animal.
+     */
+    public List<AnimalRow> search(String text, int limit) throws SQLException {
+        String match = SqlHelper.fullTextQuery(text);
+        if (match == null) {
+            return new ArrayList<>();
+        }
+        
+        StorageFormat storage = StorageFormat.current();
+        String query = rowQuery(storage, "JOIN animals_fts f ON f.rowid = a.id ",
+                "WHERE f.animals_fts MATCH ? ORDER BY f.rank LIMIT ?");
+        
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
+            stmt.setString(3, match);
+            stmt.setInt(4, limit);
+            return readRows(stmt, storage);
+        }
+    }
+    
+    /**
+     * Build an {@link AnimalRow} query; its first two parameters are bound by
+     * {@link #readRows}
+     */
+    private String rowQuery(StorageFormat storage, String join, String filter) {
+        // Same rule as Animal.isVaccinationUpToDate: no vaccine due before today
+        return "SELECT a.id, a.name, a.species, a.breed, a.birth_date, a.gender, " +
+               "o.first_name || ' ' || o.last_name AS owner_name, b.name AS box_name, " +
+               "NOT EXISTS (SELECT 1 FROM treatments t WHERE t.animal_id = a.id AND t.type = ? " +
+               "AND " + storage.dateBefore("t.next_due_date") + ") AS vaccination_up_to_date " +
+               "FROM animals a " + join +
+               "LEFT JOIN owners o ON o.id = a.owner_id " +
+               "LEFT JOIN boxes b ON b.id = a.box_id " +
+               filter;
+    }
+    
+    /**
+     * Bind the parameters of the vaccination status and read the rows
+     */
+    private List<AnimalRow> readRows(PreparedStatement stmt, StorageFormat storage) throws SQLException {
+        List<AnimalRow> rows = new ArrayList<>();
+        stmt.setObject(1, storage.code(TreatmentType.VACCINE));
+        stmt.setObject(2, storage.date(LocalDate.now()));
+        
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                rows.add(new AnimalRow(
+                        rs.getInt("id"),
+                        rs.getString("name"),
+                        rs.getString("species"),
+                        rs.getString("breed"),
+                        storage.getDate(rs, "birth_date"),
+                        rs.getString("gender"),
+                        rs.getString("owner_name"),
+                        rs.getString("box_name"),
+                        rs.getBoolean("vaccination_up_to_date")));
+            }
+        }
+        
+        return rows;
+    }
+    
+    /**
+     * Change the owner of an animal with a single UPDATE, without loading it
+     *
+     * @param ownerId the new owner, or null to detach the animal
+     * @return false if the animal or the owner does not exist
+     */
+    public boolean setOwner(int animalId, Integer ownerId) throws SQLException {
+        String query = ownerId != null
+                ? "UPDATE animals SET owner_id = ? WHERE id = ? AND EXISTS (SELECT 1 FROM owners WHERE id = ?)"
+                : "UPDATE animals SET owner_id = NULL WHERE id = ?";
+        
+        try (Connection connection = DatabaseConnection.getInstance().getConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
+            if (ownerId != null) {
+                stmt.setInt(1, ownerId);
+                stmt.setInt(2, animalId);
+                stmt.setInt(3, ownerId);
             } else {
-                stmt.setNull(6, java.sql.Types.INTEGER);
+                stmt.setInt(1, animalId);
             }
             
-            // Set box ID if available
-            if (animal.getBox() != null) {
-                stmt.setInt(7, animal.getBox().getId());
-            } else {
-                stmt.setNull(7, java.sql.Types.INTEGER);
+            boolean updated = stmt.executeUpdate() > 0;
+            IdentityMap.forget(Animal.class, animalId);
+            CACHE.invalidate(animalId);
+            if (updated) {
+                EntityEvents.updated(Animal.class, animalId);
+            }
+            return updated;
+        }
+    }
+    
+    /**
+     * Move an animal from one box to another with targeted UPDATEs, in one
+     * transaction: the new box is occupied, the old one released and the
+     * animal's box_id changed.
+     *
+     * @param fromBoxId the box the animal is expected to be in, or null
+     * @param toBoxId the box to move it to, or null to take it out of its box
+     * @return false, with nothing changed, if the boxes are the same, the
+     *         animal is not in fromBoxId or toBoxId is not available
+     */
+    public boolean moveToBox(int animalId, Integer fromBoxId, Integer toBoxId) throws SQLException {
+        if (Objects.equals(fromBoxId, toBoxId)) {
+            return false;
+        }
+        
+        return DatabaseConnection.getInstance().inTransaction(connection -> {
+            // Only move the animal if it is where the caller expects ("IS" also
+            // matches NULL) and the new box is free, so nothing has to be undone
+            String query = "UPDATE animals SET box_id = ? WHERE id = ? AND box_id IS ? " +
+                          "AND (? IS NULL OR EXISTS (SELECT 1 FROM boxes WHERE id = ? AND status = ?))";
+            
+            try (PreparedStatement stmt = connection.prepareStatement(query)) {
+                setNullableInt(stmt, 1, toBoxId);
+                stmt.setInt(2, animalId);
+                setNullableInt(stmt, 3, fromBoxId);
+                setNullableInt(stmt, 4, toBoxId);
+                setNullableInt(stmt, 5, toBoxId);
+                stmt.setObject(6, StorageFormat.current().code(BoxStatus.AVAILABLE));
+                
+                if (stmt.executeUpdate() == 0) {
+                    return false;
+                }
+            }
+            
+            IdentityMap.forget(Animal.class, animalId);
+            CACHE.invalidate(animalId);
+            EntityEvents.updated(Animal.class, animalId);
+            
+            if (toBoxId != null) {
+                boxDAO.occupy(toBoxId);
+            }
+            if (fromBoxId != null) {
+                boxDAO.release(fromBoxId);
             }
             
-            stmt.setInt(8, animal.getId());
+            return true;
+        });
+    }
+    
+    /**
+     * Move an animal to another box (or out of its box when toBoxId is null),
+     * reading its current box in the same transaction
+     *
+     * @return false if the animal does not exist, is already there or the box
+     *         is not available
+     */
+    public boolean moveToBox(int animalId, Integer toBoxId) throws SQLException {
+        return DatabaseConnection.getInstance().inTransaction(connection -> {
+            String query = "SELECT box_id FROM animals WHERE id = ?";
+            Integer fromBoxId;
             
-            return stmt.executeUpdate() > 0;
+            try (PreparedStatement stmt = connection.prepareStatement(query)) {
+                stmt.setInt(1, animalId);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return false;
+                    }
+                    int boxId = rs.getInt("box_id");
+                    fromBoxId = rs.wasNull() ? null : boxId;
+                }
+            }
+            
+            return moveToBox(animalId, fromBoxId, toBoxId);
+        });
+    }
+    
+    /**
+     * Update an animal in the database
+     */
+    public boolean update(Animal animal) throws SQLException {
+        DirtyTracker changes = animal.getDirtyTracker();
+        PartialUpdate update = new PartialUpdate("animals")
+                .setIf(changes.isDirty("name"), "name", animal.getName())
+                .setIf(changes.isDirty("species"), "species", animal.getSpecies())
+                .setIf(changes.isDirty("breed"), "breed", animal.getBreed())
+                .setIf(changes.isDirty("birthDate"), "birth_date", StorageFormat.current().date(animal.getBirthDate()))
+                .setIf(changes.isDirty("gender"), "gender", animal.getGender())
+                .setIf(changes.isDirty("owner"), "owner_id",
+                        animal.getOwner() != null ? animal.getOwner().getId() : null)
+                .setIf(changes.isDirty("box"), "box_id",
+                        animal.getBox() != null ? animal.getBox().getId() : null);
+        
+        if (update.isEmpty()) {
+            // Nothing changed since the animal was loaded
+            return true;
+        }
+        
+        try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+            boolean updated = update.execute(connection, animal.getId()) > 0;
+            IdentityMap.forget(Animal.class, animal.getId());
+            CACHE.invalidate(animal.getId());
+            if (updated) {
+                changes.markClean();
+                EntityEvents.updated(Animal.class, animal.getId());
+            }
+            return updated;
         }
     }
     
@@ -185,49 +507,142 @@ public class AnimalDAO {
      * Delete an animal from the database
      */
     public boolean delete(int id) throws SQLException {
-        // First delete all treatments for this animal
-        treatmentDAO.deleteAllByAnimalId(id);
-        
-        String query = "DELETE FROM animals WHERE id = ?";
+        IdentityMap.forget(Animal.class, id);
         
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setInt(1, id);
+        // The treatments and the animal are deleted together
+        return DatabaseConnection.getInstance().inTransaction(connection -> {
+            // First delete all treatments for this animal
+            treatmentDAO.deleteAllByAnimalId(id);
+            
+            String query = "DELETE FROM animals WHERE id = ?";
             
-            return stmt.executeUpdate() > 0;
+            try (PreparedStatement stmt = connection.prepareStatement(query)) {
+                stmt.setInt(1, id);
+                
+                boolean deleted = stmt.executeUpdate() > 0;
+                CACHE.invalidate(id);
+                if (deleted) {
+                    EntityEvents.deleted(Animal.class, id);
+                }
+                return deleted;
+            }
+        });
+    }
+    
+    /**
+     * Bind the columns of an animal to the parameters of INSERT_QUERY
+     */
+    private void bindInsert(PreparedStatement stmt, Animal animal) throws SQLException {
+        stmt.setString(1, animal.getName());
+        stmt.setString(2, animal.getSpecies());
+        stmt.setString(3, animal.getBreed());
+        stmt.setObject(4, StorageFormat.current().date(animal.getBirthDate()));
+        stmt.setString(5, animal.getGender());
+        
+        // Set owner ID if available
+        if (animal.getOwner() != null) {
+            stmt.setInt(6, animal.getOwner().getId());
+        } else {
+            stmt.setNull(6, java.sql.Types.INTEGER);
+        }
+        
+        // Set box ID if available
+        if (animal.getBox() != null) {
+            stmt.setInt(7, animal.getBox().getId());
+        } else {
+            stmt.setNull(7, java.sql.Types.INTEGER);
         }
     }
     
     /**
-     * Map a ResultSet row to an Animal object
+     * Read up to chunkSize animals from the cursor and load their associations
      */
-    private Animal mapResultSetToAnimal(ResultSet rs) throws SQLException {
-        Animal animal = new Animal();
-        animal.setId(rs.getInt("id"));
-        animal.setName(rs.getString("name"));
-        animal.setSpecies(rs.getString("species"));
-        animal.setBreed(rs.getString("breed"));
+    private List<Animal> readChunk(ResultSet rs, int chunkSize) throws SQLException {
+        AnimalGraphLoader loader = newGraphLoader();
+        for (int i = 0; i < chunkSize && rs.next(); i++) {
+            loader.add(mapResultSetToAnimal(rs), rs);
+        }
+        return loader.load();
+    }
+    
+    private static void setNullableInt(PreparedStatement stmt, int index, Integer value) throws SQLException {
+        if (value != null) {
+            stmt.setInt(index, value);
+        } else {
+            stmt.setNull(index, java.sql.Types.INTEGER);
+        }
+    }
+    
+    /**
+     * Copy an animal for the cache: scalar fields and treatments are copied, the
+     * owner and box are replaced by references that only carry their ID
+     */
+    private static Animal detach(Animal animal) {
+        Animal copy = new Animal(animal);
         
-        String birthDateStr = rs.getString("birth_date");
-        if (birthDateStr != null && !birthDateStr.isEmpty()) {
-            animal.setBirthDate(LocalDate.parse(birthDateStr));
+        if (animal.getOwner() != null) {
+            Owner owner = new Owner();
+            owner.setId(animal.getOwner().getId());
+            copy.setOwner(owner);
         }
         
-        animal.setGender(rs.getString("gender"));
+        if (animal.getBox() != null) {
+            Box box = new Box();
+            box.setId(animal.getBox().getId());
+            copy.setBox(box);
+        }
         
-        // Get owner if available
-        int ownerId = rs.getInt("owner_id");
-        if (!rs.wasNull()) {
-            Owner owner = ownerDAO.getById(ownerId);
-            animal.setOwner(owner);
+        for (Treatment treatment : animal.getTreatments()) {
+            copy.addTreatment(new Treatment(treatment));
         }
         
-        // Get box if available
-        int boxId = rs.getInt("box_id");
-        if (!rs.wasNull()) {
-            Box box = boxDAO.getById(boxId);
-            animal.setBox(box);
+        return copy;
+    }
+    
+    /**
+     * Resolve the owner and box references of an animal taken from the cache,
+     * through the owner and box caches
+     */
+    private Animal attach(Animal animal) throws SQLException {
+        IdentityMap.canonical(Animal.class, animal.getId(), animal);
+        
+        Owner owner = animal.getOwner() != null ? ownerDAO.getById(animal.getOwner().getId()) : null;
+        animal.setOwner(owner);
+        if (owner != null) {
+            owner.addAnimal(animal);
+        }
+        
+        Box box = animal.getBox() != null ? boxDAO.getById(animal.getBox().getId()) : null;
+        animal.setBox(box);
+        if (box != null) {
+            box.setCurrentAnimal(animal);
         }
         
+        animal.getDirtyTracker().markClean();
+        return animal;
+    }
+    
+    /**
+     * Create a loader that fills owners, boxes and treatments for a batch of animals
+     */
+    private AnimalGraphLoader newGraphLoader() {
+        return new AnimalGraphLoader(ownerDAO, boxDAO, treatmentDAO);
+    }
+    
+    /**
+     * Map a ResultSet row to an Animal object (scalar columns only; associations
+     * are filled by {@link AnimalGraphLoader})
+     */
+    private Animal mapResultSetToAnimal(ResultSet rs) throws SQLException {
+        Animal animal = new Animal();
+        animal.setId(rs.getInt("id"));
+        animal.setName(rs.getString("name"));
+        animal.setSpecies(rs.getString("species"));
+        animal.setBreed(rs.getString("breed"));
+        animal.setBirthDate(StorageFormat.current().getDate(rs, "birth_date"));
+        animal.setGender(rs.getString("gender"));
+        
+        animal.getDirtyTracker().markClean();
         return animal;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,113 @@
+package com.mis.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.mis.model.Animal;
+import com.mis.model.Box;
+import com.mis.model.Owner;
+import com.mis.model.Treatment;
+
+/**
+ * Fills the owners, boxes and treatments of a batch of animals using a fixed
+ * number of IN-list queries (one per association and chunk of IDs) instead of
+ * one query per animal and association.
+ * <p>
+ * Owners and boxes are shared between the animals of a batch and link back to
+ * them. Inside an {@link IdentityMap} scope, animals that were already loaded
+ * are reused as they are and the associations come from the scope first.
+ */
+class AnimalGraphLoader {
+    private final OwnerDAO ownerDAO;
+    private final BoxDAO boxDAO;
+    private final TreatmentDAO treatmentDAO;
+
+    private final List<Animal> animals = new ArrayList<>();
+    private final List<Animal> pending = new ArrayList<>();
+    private final Map<Animal, Integer> ownerIds = new IdentityHashMap<>();
+    private final Map<Animal, Integer> boxIds = new IdentityHashMap<>();
+
+    AnimalGraphLoader(OwnerDAO ownerDAO, BoxDAO boxDAO, TreatmentDAO treatmentDAO) {
+        this.ownerDAO = ownerDAO;
+        this.boxDAO = boxDAO;
+        this.treatmentDAO = treatmentDAO;
+    }
+
+    /**
+     * Register an animal mapped from the current row of the given ResultSet,
+     * remembering its owner and box foreign keys
+     */
+    void add(Animal animal, ResultSet rs) throws SQLException {
+        Animal known = IdentityMap.lookup(Animal.class, animal.getId());
+        if (known != null) {
+            animals.add(known);
+            return;
+        }
+
+        IdentityMap.canonical(Animal.class, animal.getId(), animal);
+        animals.add(animal);
+        pending.add(animal);
+
+        int ownerId = rs.getInt("owner_id");
+        if (!rs.wasNull()) {
+            ownerIds.put(animal, ownerId);
+        }
+
+        int boxId = rs.getInt("box_id");
+        if (!rs.wasNull()) {
+            boxIds.put(animal, boxId);
+        }
+    }
+
+    /**
+     * Load the associations of every registered animal and return them in
+     * registration order
+     */
+    List<Animal> load() throws SQLException {
+        if (pending.isEmpty()) {
+            return animals;
+        }
+
+        Set<Integer> animalIds = new LinkedHashSet<>();
+        for (Animal animal : pending) {
+            animalIds.add(animal.getId());
+        }
+
+        Map<Integer, Owner> owners = ownerIds.isEmpty()
+                ? Collections.emptyMap()
+                : ownerDAO.getByIds(new LinkedHashSet<>(ownerIds.values()));
+        Map<Integer, Box> boxes = boxIds.isEmpty()
+                ? Collections.emptyMap()
+                : boxDAO.getByIds(new LinkedHashSet<>(boxIds.values()));
+        Map<Integer, List<Treatment>> treatments = treatmentDAO.getAllByAnimalIds(animalIds);
+
+        for (Animal animal : pending) {
+            Owner owner = owners.get(ownerIds.get(animal));
+            if (owner != null) {
+                animal.setOwner(owner);
+                owner.addAnimal(animal);
+            }
+
+            Box box = boxes.get(boxIds.get(animal));
+            if (box != null) {
+                animal.setBox(box);
+                box.setCurrentAnimal(animal);
+            }
+
+            List<Treatment> animalTreatments = treatments.get(animal.getId());
+            animal.setTreatments(animalTreatments != null ? animalTreatments : new ArrayList<>());
+
+            // Linking the owner and box is not a change to the row
+            animal.getDirtyTracker().markClean();
+        }
+
+        return animals;
+    }
+}
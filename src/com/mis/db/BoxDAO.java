@@ -6,31 +6,39 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import com.mis.model.Box;
 import com.mis.model.BoxStatus;
+import com.mis.model.DirtyTracker;
 
 /**
  * Data Access Object for Box entities
  */
 public class BoxDAO {
-    private Connection connection;
+    private static final String INSERT_QUERY = "INSERT INTO boxes (name, location, status) VALUES (?, ?, ?)";
     
-    public BoxDAO() {
-        this.connection = DatabaseConnection.getInstance().getConnection();
+    private static final EntityCache<Box> CACHE = EntityCache.create("boxes", Box::new);
+    
+    /**
+     * The cache in front of getById and getByIds, shared by all Box DAOs
+     */
+    public static EntityCache<Box> getCache() {
+        return CACHE;
     }
     
     /**
      * Save a new box to the database
      */
     public int save(Box box) throws SQLException {
-        String query = "INSERT INTO boxes (name, location, status) VALUES (?, ?, ?)";
-        
-        try (PreparedStatement stmt = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setString(1, box.getName());
-            stmt.setString(2, box.getLocation());
-            stmt.setString(3, box.getStatus().toString());
+        try (Connection connection = DatabaseConnection.getInstance().getConnection();
+             PreparedStatement stmt = connection.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS)) {
+            bindInsert(stmt, box);
             
             int affectedRows = stmt.executeUpdate();
             
@@ -42,6 +50,7 @@ public class BoxDAO {
                 if (generatedKeys.next()) {
                     int boxId = generatedKeys.getInt(1);
                     box.setId(boxId);
+                    EntityEvents.inserted(Box.class, boxId);
                     return boxId;
                 } else {
                     throw new SQLException("Creating box failed, no ID obtained.");
@@ -50,18 +59,48 @@ public class BoxDAO {
         }
     }
     
+    /**
+     * Save many new boxes in a single transaction using JDBC batches. The
+     * generated IDs are set on the boxes.
+     *
+     * @return the number of boxes saved
+     */
+    public int saveAll(Collection<Box> boxes) throws SQLException {
+        if (boxes.isEmpty()) {
+            return 0;
+        }
+        
+        return DatabaseConnection.getInstance().inTransaction(connection -> {
+            int saved = SqlHelper.insertBatch(connection, INSERT_QUERY, boxes, this::bindInsert, Box::setId);
+            EntityEvents.bulk(Box.class);
+            return saved;
+        });
+    }
+    
     /**
      * Get a box by ID
      */
     public Box getById(int id) throws SQLException {
+        Box cached = IdentityMap.lookup(Box.class, id);
+        if (cached == null) {
+            cached = CACHE.get(id);
+        }
+        if (cached != null) {
+            return IdentityMap.canonical(Box.class, id, cached);
+        }
+        
         String query = "SELECT * FROM boxes WHERE id = ?";
+        long stamp = CACHE.stamp();
         
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
             stmt.setInt(1, id);
             
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return mapResultSetToBox(rs);
+                    Box box = mapResultSetToBox(rs);
+                    CACHE.put(id, box, stamp);
+                    return IdentityMap.canonical(Box.class, id, box);
                 }
             }
         }
@@ -69,6 +108,55 @@ public class BoxDAO {
         return null;
     }
     
+    /**
+     * Get the boxes with the given IDs, keyed by ID
+     */
+    public Map<Integer, Box> getByIds(Collection<Integer> ids) throws SQLException {
+        Map<Integer, Box> boxes = new HashMap<>();
+        List<Integer> missing = new ArrayList<>(ids.size());
+        
+        // Only query the IDs that neither the identity map scope nor the cache know
+        for (Integer id : ids) {
+            Box cached = IdentityMap.lookup(Box.class, id);
+            if (cached == null) {
+                cached = CACHE.get(id);
+            }
+            if (cached != null) {
+                boxes.put(id, IdentityMap.canonical(Box.class, id, cached));
+            } else {
+                missing.add(id);
+            }
+        }
+        
+        if (missing.isEmpty()) {
+            return boxes;
+        }
+        
+        long stamp = CACHE.stamp();
+        
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection()) {
+            for (List<Integer> chunk : SqlHelper.partition(missing)) {
+                String query = "SELECT * FROM boxes WHERE id IN (" + SqlHelper.placeholders(chunk.size()) + ")";
+                
+                try (PreparedStatement stmt = connection.prepareStatement(query)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        stmt.setInt(i + 1, chunk.get(i));
+                    }
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            Box box = mapResultSetToBox(rs);
+                            CACHE.put(box.getId(), box, stamp);
+                            boxes.put(box.getId(), IdentityMap.canonical(Box.class, box.getId(), box));
+                        }
+                    }
+                }
+            }
+        }
+        
+        return boxes;
+    }
+    
     /**
      * Get all boxes
      */
@@ -76,17 +164,76 @@ public class BoxDAO {
         String query = "SELECT * FROM boxes";
         List<Box> boxes = new ArrayList<>();
         
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(query);
+             ResultSet rs = stmt.executeQuery()) {
             
             while (rs.next()) {
-                boxes.add(mapResultSetToBox(rs));
+                Box box = mapResultSetToBox(rs);
+                boxes.add(IdentityMap.canonical(Box.class, box.getId(), box));
             }
         }
         
         return boxes;
     }
     
+    /**
+     * Get the IDs of every box, so that a list view can count its rows and
+     * load only those it shows with {@link #getByIds(Collection)}
+     */
+    public int[] getIds() throws SQLException {
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement("SELECT id FROM boxes ORDER BY id")) {
+            return SqlHelper.readIds(stmt);
+        }
+    }
+    
+    /**
+     * Get one page of boxes using keyset pagination on the primary key
+     *
+     * @param afterId continuation token from the previous page, or null for the first page
+     */
+    public Page<Box> page(Integer afterId, int limit, Page.Sort sort) throws SQLException {
+        List<Box> rows = new ArrayList<>();
+        
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(SqlHelper.keysetQuery("boxes", sort))) {
+            SqlHelper.bindKeyset(stmt, afterId, limit, sort);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Box box = mapResultSetToBox(rs);
+                    rows.add(IdentityMap.canonical(Box.class, box.getId(), box));
+                }
+            }
+        }
+        
+        return SqlHelper.toPage(rows, limit, Box::getId);
+    }
+    
+    /**
+     * Stream all boxes straight from a live ResultSet, in constant memory. The
+     * stream holds a pooled connection until it is exhausted or closed, so use
+     * it in a try-with-resources block.
+     */
+    public Stream<Box> stream(int fetchSize) throws SQLException {
+        return Cursor.open("SELECT * FROM boxes", fetchSize).stream(this::mapResultSetToBox);
+    }
+    
+    /**
+     * Stream all boxes with the default fetch size
+     */
+    public Stream<Box> stream() throws SQLException {
+        return stream(Cursor.DEFAULT_FETCH_SIZE);
+    }
+    
+    /**
+     * Process every box in constant memory; the cursor is always closed
+     */
+    public void forEach(Consumer<? super Box> action) throws SQLException {
+        Cursor.forEach(stream(), action);
+    }
+    
     /**
      * Get all available boxes
      */
@@ -94,12 +241,14 @@ public class BoxDAO {
         String query = "SELECT * FROM boxes WHERE status = ?";
         List<Box> boxes = new ArrayList<>();
         
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, BoxStatus.AVAILABLE.toString());
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
+            stmt.setObject(1, StorageFormat.current().code(BoxStatus.AVAILABLE));
             
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    boxes.add(mapResultSetToBox(rs));
+                    Box box = mapResultSetToBox(rs);
+                    boxes.add(IdentityMap.canonical(Box.class, box.getId(), box));
                 }
             }
         }
@@ -108,41 +257,118 @@ public class BoxDAO {
     }
     
     /**
-     * Update a box in the database
+     * Mark a box as occupied if it is available
+     *
+     * @return false if the box does not exist or is not available
      */
-    public boolean update(Box box) throws SQLException {
-        String query = "UPDATE boxes SET name = ?, location = ?, status = ? WHERE id = ?";
+    public boolean occupy(int boxId) throws SQLException {
+        return setStatus(boxId, BoxStatus.OCCUPIED, BoxStatus.AVAILABLE);
+    }
+    
+    /**
+     * Mark a box as available again
+     */
+    public boolean release(int boxId) throws SQLException {
+        return setStatus(boxId, BoxStatus.AVAILABLE, null);
+    }
+    
+    /**
+     * Change the status of a box with a single UPDATE, optionally only when it
+     * currently has the expected status
+     */
+    private boolean setStatus(int boxId, BoxStatus status, BoxStatus expected) throws SQLException {
+        String query = expected != null
+                ? "UPDATE boxes SET status = ? WHERE id = ? AND status = ?"
+                : "UPDATE boxes SET status = ? WHERE id = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, box.getName());
-            stmt.setString(2, box.getLocation());
-            stmt.setString(3, box.getStatus().toString());
-            stmt.setInt(4, box.getId());
+        StorageFormat storage = StorageFormat.current();
+        
+        try (Connection connection = DatabaseConnection.getInstance().getConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
+            stmt.setObject(1, storage.code(status));
+            stmt.setInt(2, boxId);
+            if (expected != null) {
+                stmt.setObject(3, storage.code(expected));
+            }
             
-            return stmt.executeUpdate() > 0;
+            boolean updated = stmt.executeUpdate() > 0;
+            IdentityMap.forget(Box.class, boxId);
+            CACHE.invalidate(boxId);
+            if (updated) {
+                EntityEvents.updated(Box.class, boxId);
+            }
+            return updated;
         }
     }
     
     /**
-     * Delete a box from the database
+     * Update a box in the database
      */
-    public boolean delete(int id) throws SQLException {
-        // First, update any animals that are in this box to have no box
-        String updateAnimalsQuery = "UPDATE animals SET box_id = NULL WHERE box_id = ?";
+    public boolean update(Box box) throws SQLException {
+        DirtyTracker changes = box.getDirtyTracker();
+        PartialUpdate update = new PartialUpdate("boxes")
+                .setIf(changes.isDirty("name"), "name", box.getName())
+                .setIf(changes.isDirty("location"), "location", box.getLocation())
+                .setIf(changes.isDirty("status"), "status", StorageFormat.current().code(box.getStatus()));
         
-        try (PreparedStatement stmt = connection.prepareStatement(updateAnimalsQuery)) {
-            stmt.setInt(1, id);
-            stmt.executeUpdate();
+        if (update.isEmpty()) {
+            // Nothing changed since the box was loaded
+            return true;
         }
         
-        // Then delete the box
-        String query = "DELETE FROM boxes WHERE id = ?";
+        try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+            boolean updated = update.execute(connection, box.getId()) > 0;
+            IdentityMap.forget(Box.class, box.getId());
+            CACHE.invalidate(box.getId());
+            if (updated) {
+                changes.markClean();
+                EntityEvents.updated(Box.class, box.getId());
+            }
+            return updated;
+        }
+    }
+    
+    /**
+     * Delete a box from the database
+     */
+    public boolean delete(int id) throws SQLException {
+        IdentityMap.forget(Box.class, id);
         
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setInt(1, id);
+        // Detaching the animals and deleting the box are committed together
+        return DatabaseConnection.getInstance().inTransaction(connection -> {
+            // First, update any animals that are in this box to have no box
+            String updateAnimalsQuery = "UPDATE animals SET box_id = NULL WHERE box_id = ?";
             
-            return stmt.executeUpdate() > 0;
-        }
+            try (PreparedStatement stmt = connection.prepareStatement(updateAnimalsQuery)) {
+                stmt.setInt(1, id);
+                stmt.executeUpdate();
+            }
+            
+            // Then delete the box
+            String query = "DELETE FROM boxes WHERE id = ?";
+            
+            try (PreparedStatement stmt = connection.prepareStatement(query)) {
+                stmt.setInt(1, id);
+                
+                boolean deleted = stmt.executeUpdate() > 0;
+                CACHE.invalidate(id);
+                if (deleted) {
+                    EntityEvents.deleted(Box.class, id);
+                }
+                // The animals that pointed to this box were detached above
+                AnimalDAO.getCache().clear();
+                return deleted;
+            }
+        });
+    }
+    
+    /**
+     * Bind the columns of a box to the parameters of INSERT_QUERY
+     */
+    private void bindInsert(PreparedStatement stmt, Box box) throws SQLException {
+        stmt.setString(1, box.getName());
+        stmt.setString(2, box.getLocation());
+        stmt.setObject(3, StorageFormat.current().code(box.getStatus()));
     }
     
     /**
@@ -153,8 +379,9 @@ public class BoxDAO {
         box.setId(rs.getInt("id"));
         box.setName(rs.getString("name"));
         box.setLocation(rs.getString("location"));
-        box.setStatus(BoxStatus.valueOf(rs.getString("status")));
+        box.setStatus(StorageFormat.current().getEnum(rs, "status", BoxStatus.class));
         
+        box.getDirtyTracker().markClean();
         return box;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,514 @@
+package com.mis.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded pool of SQLite connections.
+ * <p>
+ * Connections are borrowed with {@link #borrow()} and handed back by calling
+ * {@code close()} on the returned handle. Borrowing is reentrant per thread: a
+ * thread that already holds a connection gets another handle on the same
+ * connection, so nested DAO calls share it and the physical connection only
+ * goes back to the pool when the outermost handle is closed.
+ * <p>
+ * Idle connections are validated before being handed out and evicted once they
+ * have been idle longer than the configured timeout. Each physical connection
+ * carries its own {@link StatementCache}, which the handles use transparently
+ * for {@code prepareStatement(String)} and
+ * {@code prepareStatement(String, int)}. When the pool is given
+ * {@link QueryMetrics}, every statement it hands out records its executions
+ * there.
+ */
+public class ConnectionPool {
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String url;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+    private final int statementCacheSize;
+    private final Initializer initializer;
+    private final QueryMetrics metrics;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final Set<PooledConnection> open = new HashSet<>();
+    private final ThreadLocal<Lease> currentLease = new ThreadLocal<>();
+    private final ScheduledExecutorService evictor;
+
+    private int totalCount;
+    private boolean closed;
+    private long retiredStatementHits;
+    private long retiredStatementMisses;
+    private int generation;
+
+    public ConnectionPool(String url, int maxSize, long idleTimeoutMillis, long borrowTimeoutMillis,
+                          int statementCacheSize, Initializer initializer) {
+        this(url, maxSize, idleTimeoutMillis, borrowTimeoutMillis, statementCacheSize, initializer, null);
+    }
+
+    /**
+     * @param metrics where statement executions are recorded, or null to not
+     *                instrument statements
+     */
+    public ConnectionPool(String url, int maxSize, long idleTimeoutMillis, long borrowTimeoutMillis,
+                          int statementCacheSize, Initializer initializer, QueryMetrics metrics) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+
+        this.url = url;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.initializer = initializer;
+        this.metrics = metrics;
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "db-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        this.evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrow a connection. The caller must close the returned handle, which
+     * gives the connection back to the pool.
+     */
+    public Connection borrow() throws SQLException {
+        Lease lease = currentLease.get();
+        if (lease != null && lease.acquire()) {
+            return lease.newHandle();
+        }
+
+        PooledConnection pooled = take();
+        lease = new Lease(pooled);
+        lease.acquire();
+        currentLease.set(lease);
+        return lease.newHandle();
+    }
+
+    /**
+     * Whether the current thread holds a connection from this pool
+     */
+    public boolean isHeldByCurrentThread() {
+        Lease lease = currentLease.get();
+        return lease != null && lease.isHeld();
+    }
+
+    /**
+     * Number of physical connections currently open
+     */
+    public int getTotalCount() {
+        lock.lock();
+        try {
+            return totalCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of open connections waiting in the pool
+     */
+    public int getIdleCount() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Number of prepared statements served from a statement cache, over all
+     * connections this pool has opened
+     */
+    public long getStatementCacheHits() {
+        lock.lock();
+        try {
+            long hits = retiredStatementHits;
+            for (PooledConnection pooled : open) {
+                hits += pooled.statementCache.getHitCount();
+            }
+            return hits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of prepared statements that had to be prepared by the driver,
+     * over all connections this pool has opened
+     */
+    public long getStatementCacheMisses() {
+        lock.lock();
+        try {
+            long misses = retiredStatementMisses;
+            for (PooledConnection pooled : open) {
+                misses += pooled.statementCache.getMissCount();
+            }
+            return misses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retire every open connection so that the next borrows open fresh ones
+     * through the initializer. Idle connections are closed now, connections in
+     * use when they are returned.
+     */
+    public void refresh() {
+        lock.lock();
+        try {
+            generation++;
+            for (PooledConnection pooled : idle) {
+                destroy(pooled);
+            }
+            idle.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close all idle connections and refuse further borrows. Connections that
+     * are in use are closed when they are returned.
+     */
+    public void close() {
+        evictor.shutdownNow();
+
+        lock.lock();
+        try {
+            closed = true;
+            for (PooledConnection pooled : idle) {
+                destroy(pooled);
+            }
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close connections that have been idle longer than the idle timeout
+     */
+    void evictIdle() {
+        long now = System.currentTimeMillis();
+
+        lock.lock();
+        try {
+            Iterator<PooledConnection> it = idle.iterator();
+            while (it.hasNext()) {
+                PooledConnection pooled = it.next();
+                if (now - pooled.lastReturned >= idleTimeoutMillis) {
+                    it.remove();
+                    destroy(pooled);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private PooledConnection take() throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+
+        lock.lock();
+        try {
+            while (true) {
+                if (closed) {
+                    throw new SQLException("Connection pool is closed.");
+                }
+
+                PooledConnection pooled = idle.pollFirst();
+                if (pooled != null) {
+                    if (isValid(pooled)) {
+                        return pooled;
+                    }
+                    destroy(pooled);
+                    continue;
+                }
+
+                if (totalCount < maxSize) {
+                    totalCount++;
+                    break;
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new SQLException("Timed out waiting for a database connection.");
+                }
+                try {
+                    available.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a database connection.", e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // Open the new connection outside the lock
+        try {
+            PooledConnection pooled = open();
+            lock.lock();
+            try {
+                open.add(pooled);
+            } finally {
+                lock.unlock();
+            }
+            return pooled;
+        } catch (SQLException | RuntimeException e) {
+            lock.lock();
+            try {
+                totalCount--;
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        int openedGeneration;
+        lock.lock();
+        try {
+            openedGeneration = generation;
+        } finally {
+            lock.unlock();
+        }
+
+        Connection connection = DriverManager.getConnection(url);
+        try {
+            if (initializer != null) {
+                initializer.initialize(connection);
+            }
+        } catch (SQLException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+        return new PooledConnection(connection, statementCacheSize, openedGeneration);
+    }
+
+    private void release(PooledConnection pooled) {
+        boolean healthy = resetForReuse(pooled);
+
+        lock.lock();
+        try {
+            if (closed || !healthy || pooled.generation != generation) {
+                destroy(pooled);
+            } else {
+                pooled.lastReturned = System.currentTimeMillis();
+                idle.addFirst(pooled);
+            }
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Roll back anything a caller left uncommitted so the next borrower starts clean
+     */
+    private boolean resetForReuse(PooledConnection pooled) {
+        try {
+            if (pooled.connection.isClosed()) {
+                return false;
+            }
+            if (!pooled.connection.getAutoCommit()) {
+                pooled.connection.rollback();
+                pooled.connection.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Close a physical connection; must be called with the lock held
+     */
+    private void destroy(PooledConnection pooled) {
+        totalCount--;
+        if (open.remove(pooled)) {
+            retiredStatementHits += pooled.statementCache.getHitCount();
+            retiredStatementMisses += pooled.statementCache.getMissCount();
+        }
+        pooled.statementCache.close();
+        try {
+            pooled.connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A physical connection owned by the pool
+     */
+    private static class PooledConnection {
+        private final Connection connection;
+        private final StatementCache statementCache;
+        private final int generation;
+        private long lastReturned;
+
+        PooledConnection(Connection connection, int statementCacheSize, int generation) {
+            this.connection = connection;
+            this.statementCache = new StatementCache(connection, statementCacheSize);
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Prepares a newly opened physical connection, e.g. by setting pragmas
+     */
+    public interface Initializer {
+        void initialize(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Tracks the handles a thread holds on one pooled connection
+     */
+    private class Lease {
+        private final PooledConnection pooled;
+        private int depth;
+        private boolean released;
+
+        Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        synchronized boolean acquire() {
+            if (released) {
+                return false;
+            }
+            depth++;
+            return true;
+        }
+
+        synchronized boolean isHeld() {
+            return !released && depth > 0;
+        }
+
+        synchronized void releaseHandle() {
+            if (--depth == 0) {
+                released = true;
+                release(pooled);
+            }
+        }
+
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    new Handle(this, metrics));
+        }
+    }
+
+    /**
+     * Connection handle given to callers; close() returns it to the pool
+     */
+    private static class Handle implements InvocationHandler {
+        private final Lease lease;
+        private final QueryMetrics metrics;
+        private boolean closed;
+
+        Handle(Lease lease, QueryMetrics metrics) {
+            this.lease = lease;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        lease.releaseHandle();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || lease.pooled.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + lease.pooled.connection + "]";
+                default:
+                    break;
+            }
+
+            if (closed) {
+                throw new SQLException("Connection handle is already closed.");
+            }
+
+            Object result = null;
+            if (method.getName().equals("prepareStatement") && args != null && args[0] instanceof String) {
+                if (args.length == 1) {
+                    result = lease.pooled.statementCache.prepare((String) args[0], Statement.NO_GENERATED_KEYS);
+                } else if (args.length == 2 && args[1] instanceof Integer) {
+                    result = lease.pooled.statementCache.prepare((String) args[0], (Integer) args[1]);
+                }
+            }
+
+            if (result == null) {
+                try {
+                    result = method.invoke(lease.pooled.connection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+
+            if (metrics != null) {
+                if (result instanceof PreparedStatement && args != null && args[0] instanceof String) {
+                    return InstrumentedStatement.wrap(PreparedStatement.class, (PreparedStatement) result,
+                            (String) args[0], metrics);
+                }
+                if (result instanceof Statement && method.getName().equals("createStatement")) {
+                    return InstrumentedStatement.wrap(Statement.class, (Statement) result, null, metrics);
+                }
+            }
+            return result;
+        }
+    }
+}
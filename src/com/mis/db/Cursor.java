@@ -0,0 +1,170 @@
+package com.mis.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A live ResultSet together with the statement and pooled connection it was
+ * read from. Backs the streaming APIs of the DAOs: rows are mapped as they are
+ * read, so a full table can be processed in constant memory.
+ * <p>
+ * Streams built on a cursor close it when they are exhausted or closed, so
+ * callers must either consume them fully or use try-with-resources.
+ */
+final class Cursor implements AutoCloseable {
+    /**
+     * Rows fetched per round trip when the caller does not choose a fetch size
+     */
+    static final int DEFAULT_FETCH_SIZE = 500;
+
+    private final Connection connection;
+    private final PreparedStatement stmt;
+    private final ResultSet rs;
+    private boolean closed;
+
+    private Cursor(Connection connection, PreparedStatement stmt, ResultSet rs) {
+        this.connection = connection;
+        this.stmt = stmt;
+        this.rs = rs;
+    }
+
+    /**
+     * Run a query on a borrowed connection and keep its ResultSet open
+     */
+    static Cursor open(String sql, int fetchSize, ParameterBinder binder) throws SQLException {
+        Connection connection = DatabaseConnection.getInstance().getReadConnection();
+        PreparedStatement stmt = null;
+        try {
+            stmt = connection.prepareStatement(sql);
+            stmt.setFetchSize(fetchSize);
+            if (binder != null) {
+                binder.bind(stmt);
+            }
+            return new Cursor(connection, stmt, stmt.executeQuery());
+        } catch (SQLException | RuntimeException e) {
+            if (stmt != null) {
+                stmt.close();
+            }
+            connection.close();
+            throw e;
+        }
+    }
+
+    static Cursor open(String sql, int fetchSize) throws SQLException {
+        return open(sql, fetchSize, null);
+    }
+
+    /**
+     * Stream the rows of the cursor, one mapped element per row
+     */
+    <T> Stream<T> stream(RowMapper<T> mapper) {
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!closed && rs.next()) {
+                        action.accept(mapper.map(rs));
+                        return true;
+                    }
+                    close();
+                    return false;
+                } catch (SQLException e) {
+                    close();
+                    throw new UncheckedSQLException(e);
+                }
+            }
+        }, false).onClose(this::close);
+    }
+
+    /**
+     * Stream the rows of the cursor in chunks of up to chunkSize rows, for
+     * entities whose associations are loaded per chunk
+     */
+    <T> Stream<T> streamChunks(int chunkSize, ChunkMapper<T> mapper) {
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<List<T>>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super List<T>> action) {
+                try {
+                    List<T> chunk = closed ? null : mapper.map(rs, chunkSize);
+                    if (chunk != null && !chunk.isEmpty()) {
+                        action.accept(chunk);
+                        return true;
+                    }
+                    close();
+                    return false;
+                } catch (SQLException e) {
+                    close();
+                    throw new UncheckedSQLException(e);
+                }
+            }
+        }, false).onClose(this::close).flatMap(List::stream);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            rs.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Consume a stream built on a cursor, closing it afterwards and turning
+     * wrapped SQLExceptions back into checked ones
+     */
+    static <T> void forEach(Stream<T> stream, Consumer<? super T> action) throws SQLException {
+        try (Stream<T> s = stream) {
+            s.forEach(action);
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Sets the parameters of the cursor's query
+     */
+    @FunctionalInterface
+    interface ParameterBinder {
+        void bind(PreparedStatement stmt) throws SQLException;
+    }
+
+    /**
+     * Maps the current row of a ResultSet
+     */
+    @FunctionalInterface
+    interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Reads up to chunkSize rows from a ResultSet; returns an empty list at the end
+     */
+    @FunctionalInterface
+    interface ChunkMapper<T> {
+        List<T> map(ResultSet rs, int chunkSize) throws SQLException;
+    }
+}
@@ -0,0 +1,127 @@
+package com.mis.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Database settings read from a properties file, overridable by system properties.
+ * <p>
+ * The file is {@code animalMIS.properties} in the working directory unless the
+ * {@code mis.config} system property points elsewhere. A setting such as
+ * {@code db.profile} can be overridden with the system property
+ * {@code mis.db.profile}.
+ */
+public class DatabaseConfig {
+    public static final String CONFIG_FILE_PROPERTY = "mis.config";
+    public static final String DEFAULT_CONFIG_FILE = "animalMIS.properties";
+    private static final String SYSTEM_PROPERTY_PREFIX = "mis.";
+
+    public static final String URL = "db.url";
+    public static final String PROFILE = "db.profile";
+    public static final String POOL_SIZE = "db.pool.size";
+    public static final String STATEMENT_CACHE_SIZE = "db.statementCache.size";
+    public static final String ENTITY_CACHE_SIZE = "db.entityCache.size";
+    public static final String STORAGE_FORMAT = "db.storage.format";
+    public static final String METRICS_ENABLED = "db.metrics.enabled";
+    public static final String SLOW_QUERY_MILLIS = "db.slowQuery.millis";
+
+    private final Path file;
+    private final Properties properties = new Properties();
+
+    private DatabaseConfig(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Load the configuration file, if there is one
+     */
+    public static DatabaseConfig load() {
+        Path file = Paths.get(System.getProperty(CONFIG_FILE_PROPERTY, DEFAULT_CONFIG_FILE));
+        DatabaseConfig config = new DatabaseConfig(file);
+
+        if (Files.isRegularFile(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                config.properties.load(in);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return config;
+    }
+
+    /**
+     * Get a setting: system property first, then the file, then the default
+     */
+    public String get(String key, String defaultValue) {
+        String value = System.getProperty(SYSTEM_PROPERTY_PREFIX + key);
+        if (value == null) {
+            value = properties.getProperty(key);
+        }
+        return value != null && !value.trim().isEmpty() ? value.trim() : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = get(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = get(key, null);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+
+    public String getUrl() {
+        return get(URL, "jdbc:sqlite:animalMIS.db");
+    }
+
+    public DatabaseProfile getProfile() {
+        String value = get(PROFILE, DatabaseProfile.BALANCED.getName());
+        try {
+            return DatabaseProfile.fromName(value);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return DatabaseProfile.BALANCED;
+        }
+    }
+
+    public StorageFormat getStorageFormat() {
+        String value = get(STORAGE_FORMAT, StorageFormat.TEXT.getName());
+        try {
+            return StorageFormat.fromName(value);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return StorageFormat.TEXT;
+        }
+    }
+
+    /**
+     * Change the profile and save it to the configuration file. A system
+     * property override, if set, still wins on the next start.
+     */
+    public void setProfile(DatabaseProfile profile) {
+        properties.setProperty(PROFILE, profile.getName());
+        store();
+    }
+
+    private void store() {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            properties.store(out, "Animal Management System database settings");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -1,105 +1,218 @@
 package com.mis.db;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 /**
- * Singleton class to manage the database connection
+ * Singleton giving access to the pooled database connections.
+ * <p>
+ * There is one writer connection and a pool of read-only connections. In WAL
+ * mode readers work on a snapshot and never wait for the writer, so long
+ * queries and screen refreshes run in parallel with writes. DAOs borrow a
+ * connection for each operation (the writer for statements that modify data,
+ * a reader for queries) and close it when done, which returns it to its pool.
  */
 public class DatabaseConnection {
+    private static final int WRITER_POOL_SIZE = 1;
+    private static final int DEFAULT_POOL_SIZE = 4;
+    private static final long IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+    private static final long BORROW_TIMEOUT_MILLIS = 30 * 1000;
+    private static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+    private static final int DEFAULT_SLOW_QUERY_MILLIS = 200;
+    
     private static DatabaseConnection instance;
-    private Connection connection;
-    private String url = "jdbc:sqlite:animalMIS.db";
+    private final DatabaseConfig config;
+    private final ConnectionPool pool;
+    private final ConnectionPool readPool;
+    private final QueryMetrics queryMetrics;
+    private final String url;
+    private volatile DatabaseProfile profile;
+    private volatile StorageFormat storageFormat;
     
     private DatabaseConnection() {
         try {
             // Register JDBC driver
             Class.forName("org.sqlite.JDBC");
-            
-            // Open connection
-            this.connection = DriverManager.getConnection(url);
-        } catch (ClassNotFoundException | SQLException e) {
+        } catch (ClassNotFoundException e) {
             e.printStackTrace();
         }
+        
+        this.config = DatabaseConfig.load();
+        this.url = config.getUrl();
+        this.profile = config.getProfile();
+        int statementCacheSize = config.getInt(DatabaseConfig.STATEMENT_CACHE_SIZE, DEFAULT_STATEMENT_CACHE_SIZE);
+        this.queryMetrics = config.getBoolean(DatabaseConfig.METRICS_ENABLED, true)
+                ? new QueryMetrics(config.getInt(DatabaseConfig.SLOW_QUERY_MILLIS, DEFAULT_SLOW_QUERY_MILLIS))
+                : null;
+        
+        // SQLite allows one writer at a time, so writers queue here instead of
+        // failing with SQLITE_BUSY
+        this.pool = new ConnectionPool(url, WRITER_POOL_SIZE,
+                IDLE_TIMEOUT_MILLIS, BORROW_TIMEOUT_MILLIS, statementCacheSize,
+                connection -> profile.apply(connection), queryMetrics);
+        this.readPool = new ConnectionPool(url,
+                config.getInt(DatabaseConfig.POOL_SIZE, DEFAULT_POOL_SIZE),
+                IDLE_TIMEOUT_MILLIS, BORROW_TIMEOUT_MILLIS, statementCacheSize,
+                connection -> {
+                    profile.apply(connection);
+                    try (Statement stmt = connection.createStatement()) {
+                        stmt.execute("PRAGMA query_only = ON");
+                    }
+                }, queryMetrics);
     }
     
-    public Connection getConnection() {
-        return connection;
+    /**
+     * Borrow the writer connection. Callers must close it to give it back.
+     */
+    public Connection getConnection() throws SQLException {
+        return pool.borrow();
     }
     
     /**
-     * Get singleton instance of database connection
+     * Borrow a read-only connection for queries. Callers must close it to give
+     * it back.
+     * <p>
+     * A thread that already holds the writer connection (for instance inside
+     * {@link #inTransaction(SqlWork)}) gets the writer again, so it sees its
+     * own uncommitted changes.
      */
-    public static DatabaseConnection getInstance() {
-        if (instance == null) {
-            instance = new DatabaseConnection();
-        } else {
-            try {
-                if (instance.getConnection().isClosed()) {
-                    instance = new DatabaseConnection();
-                }
+    public Connection getReadConnection() throws SQLException {
+        if (pool.isHeldByCurrentThread()) {
+            return pool.borrow();
+        }
+        return readPool.borrow();
+    }
+    
+    /**
+     * Run work inside a {@link UnitOfWork} and commit it. If the current thread
+     * already has a unit of work open, the work joins it and the outer unit
+     * commits.
+     */
+    public <T> T inTransaction(SqlWork<T> work) throws SQLException {
+        try (UnitOfWork unit = UnitOfWork.begin()) {
+            T result = work.execute(unit.getConnection());
+            unit.commit();
+            return result;
+        }
+    }
+    
+    /**
+     * Get the performance profile applied to new connections
+     */
+    public DatabaseProfile getProfile() {
+        return profile;
+    }
+    
+    /**
+     * Switch to another performance profile and remember it in the configuration
+     * file. Pooled connections are reopened with the new pragmas.
+     */
+    public void setProfile(DatabaseProfile profile) {
+        this.profile = profile;
+        config.setProfile(profile);
+        pool.refresh();
+        readPool.refresh();
+    }
+    
+    /**
+     * Get the format in which the database stores dates and enums. It is set
+     * by {@link #initializeDatabase()}; before that, it is read from the
+     * existing tables.
+     */
+    public StorageFormat getStorageFormat() {
+        StorageFormat format = storageFormat;
+        if (format == null) {
+            try (Connection connection = getReadConnection()) {
+                format = StorageConverter.detect(connection);
             } catch (SQLException e) {
                 e.printStackTrace();
-                instance = new DatabaseConnection();
             }
+            if (format == null) {
+                // No tables yet: they will be created in the configured format
+                return config.getStorageFormat();
+            }
+            storageFormat = format;
+        }
+        return format;
+    }
+    
+    /**
+     * Get the JDBC URL of the database
+     */
+    public String getUrl() {
+        return url;
+    }
+    
+    /**
+     * Get the database configuration
+     */
+    public DatabaseConfig getConfig() {
+        return config;
+    }
+    
+    /**
+     * Get the pool of the writer connection
+     */
+    public ConnectionPool getPool() {
+        return pool;
+    }
+    
+    /**
+     * Get the pool of read-only connections
+     */
+    public ConnectionPool getReadPool() {
+        return readPool;
+    }
+    
+    /**
+     * Get the latency statistics of the statements run on both pools, or null
+     * when {@code db.metrics.enabled} is false
+     */
+    public QueryMetrics getQueryMetrics() {
+        return queryMetrics;
+    }
+    
+    /**
+     * Get singleton instance of database connection
+     */
+    public static synchronized DatabaseConnection getInstance() {
+        if (instance == null) {
+            instance = new DatabaseConnection();
         }
         return instance;
     }
     
     /**
-     * Initialize the database tables if they don't exist
+     * Close every pooled connection. The next call to getInstance() opens a new pool.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.pool.close();
+            instance.readPool.close();
+            instance = null;
+        }
+    }
+    
+    /**
+     * Create or upgrade the database schema, and convert the tables when the
+     * configured storage format differs from the one they use. Does nothing
+     * when both are already up to date.
      */
     public void initializeDatabase() {
-        try {
-            // Create tables if they don't exist
-            String createAnimalTable = "CREATE TABLE IF NOT EXISTS animals (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "name TEXT NOT NULL," +
-                    "species TEXT NOT NULL," +
-                    "breed TEXT," +
-                    "birth_date TEXT," +
-                    "gender TEXT," +
-                    "owner_id INTEGER," +
-                    "box_id INTEGER," +
-                    "FOREIGN KEY (owner_id) REFERENCES owners(id)," +
-                    "FOREIGN KEY (box_id) REFERENCES boxes(id)" +
-                    ")";
+        try (Connection connection = getConnection()) {
+            SchemaMigrator migrator = new SchemaMigrator();
+            migrator.migrate(connection);
             
-            String createOwnerTable = "CREATE TABLE IF NOT EXISTS owners (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "first_name TEXT NOT NULL," +
-                    "last_name TEXT NOT NULL," +
-                    "email TEXT," +
-                    "phone TEXT," +
-                    "address TEXT" +
-                    ")";
-            
-            String createBoxTable = "CREATE TABLE IF NOT EXISTS boxes (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "name TEXT NOT NULL," +
-                    "location TEXT," +
-                    "status TEXT NOT NULL" +
-                    ")";
-            
-            String createTreatmentTable = "CREATE TABLE IF NOT EXISTS treatments (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "animal_id INTEGER NOT NULL," +
-                    "type TEXT NOT NULL," +
-                    "name TEXT NOT NULL," +
-                    "description TEXT," +
-                    "administration_date TEXT," +
-                    "next_due_date TEXT," +
-                    "administered BOOLEAN DEFAULT 0," +
-                    "FOREIGN KEY (animal_id) REFERENCES animals(id)" +
-                    ")";
-            
-            connection.createStatement().execute(createOwnerTable);
-            connection.createStatement().execute(createBoxTable);
-            connection.createStatement().execute(createAnimalTable);
-            connection.createStatement().execute(createTreatmentTable);
+            StorageFormat current = StorageConverter.detect(connection);
+            StorageFormat target = config.getStorageFormat();
+            if (current != null && current != target) {
+                new StorageConverter(migrator.getMigrations()).convert(connection, current, target);
+                current = target;
+            }
+            storageFormat = current;
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
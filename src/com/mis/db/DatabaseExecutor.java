@@ -0,0 +1,179 @@
+package com.mis.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded thread pool running database calls off the calling thread, so that
+ * callers such as the Swing event dispatch thread never block on I/O:
+ * <pre>
+ * DatabaseExecutor.getInstance()
+ *         .submit(() -&gt; ownerDAO.search(text, 50))
+ *         .thenAcceptAsync(owners -&gt; showOwners(owners), SwingUtilities::invokeLater);
+ * </pre>
+ * There is one thread per pooled connection (the read-only connections plus
+ * the writer), so more threads would only wait for a connection. Calls beyond
+ * that wait in a bounded queue; when it is full, the returned future fails
+ * with a {@link RejectedExecutionException} instead of piling up work.
+ * <p>
+ * Cancelling a returned future (or failing it, see
+ * {@link #withTimeout(CompletableFuture, long, TimeUnit)}) drops the call if it
+ * has not started, and interrupts it otherwise, which ends a wait for a
+ * connection.
+ * <p>
+ * Calls run on another thread, so they do not join a {@link UnitOfWork} or an
+ * {@link IdentityMap} scope open on the calling thread; use
+ * {@link #inTransaction(SqlWork)} to run several statements atomically.
+ */
+public final class DatabaseExecutor {
+    private static final int QUEUE_CAPACITY = 1000;
+    private static final long KEEP_ALIVE_SECONDS = 60;
+    
+    private static DatabaseExecutor instance;
+    private final ThreadPoolExecutor executor;
+    
+    private DatabaseExecutor(int threads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "db-worker-" + threadNumber.incrementAndGet());
+            // Queued database calls must not keep the application from exiting
+            thread.setDaemon(true);
+            return thread;
+        };
+        
+        this.executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+    
+    /**
+     * Get the executor, sized after the connection pools
+     */
+    public static synchronized DatabaseExecutor getInstance() {
+        if (instance == null) {
+            DatabaseConnection connection = DatabaseConnection.getInstance();
+            instance = new DatabaseExecutor(connection.getReadPool().getMaxSize() + connection.getPool().getMaxSize());
+        }
+        return instance;
+    }
+    
+    /**
+     * Stop the executor after the calls already submitted. The next call to
+     * getInstance() creates a new one.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.executor.shutdown();
+            instance = null;
+        }
+    }
+    
+    /**
+     * Run a call on the executor
+     *
+     * @return a future completed with the result of the call, or with the
+     *         SQLException or runtime exception it threw
+     */
+    public <T> CompletableFuture<T> submit(SqlCall<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                if (result.isDone()) {
+                    // Cancelled while queued
+                    return;
+                }
+                try {
+                    result.complete(call.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        
+        // Cancelled or timed out by the caller: stop the call too. This is a
+        // no-op when the call itself completed the future.
+        result.whenComplete((value, error) -> {
+            if (error != null) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Run work in a transaction on the executor
+     *
+     * @see DatabaseConnection#inTransaction(SqlWork)
+     */
+    public <T> CompletableFuture<T> inTransaction(SqlWork<T> work) {
+        return submit(() -> DatabaseConnection.getInstance().inTransaction(work));
+    }
+    
+    /**
+     * Combine futures into one completed with all their results, in order, or
+     * failed as soon as one of them fails
+     */
+    public static <T> CompletableFuture<List<T>> allOf(Collection<? extends CompletableFuture<? extends T>> futures) {
+        List<CompletableFuture<? extends T>> pending = new ArrayList<>(futures);
+        CompletableFuture<List<T>> all = new CompletableFuture<>();
+        
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, error) -> {
+            if (error != null) {
+                all.completeExceptionally(error);
+                return;
+            }
+            List<T> results = new ArrayList<>(pending.size());
+            for (CompletableFuture<? extends T> future : pending) {
+                results.add(future.join());
+            }
+            all.complete(results);
+        });
+        
+        // Fail fast instead of waiting for the slower futures
+        for (CompletableFuture<? extends T> future : pending) {
+            future.whenComplete((value, error) -> {
+                if (error != null) {
+                    all.completeExceptionally(error);
+                }
+            });
+        }
+        return all;
+    }
+    
+    /**
+     * Fail a future returned by {@link #submit(SqlCall)} with a
+     * TimeoutException, and interrupt its call, if it has not completed
+     * within a timeout
+     */
+    public static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeout, TimeUnit unit) {
+        CompletableFuture.delayedExecutor(timeout, unit).execute(() ->
+                future.completeExceptionally(new TimeoutException("Database call timed out after " + timeout + " " + unit.toString().toLowerCase())));
+        return future;
+    }
+    
+    /**
+     * Number of calls running or waiting
+     */
+    public int getPendingCount() {
+        return executor.getActiveCount() + executor.getQueue().size();
+    }
+    
+    public int getThreadCount() {
+        return executor.getMaximumPoolSize();
+    }
+}
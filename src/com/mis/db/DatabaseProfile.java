@@ -0,0 +1,101 @@
+package com.mis.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Named sets of SQLite pragmas applied to every connection when it is opened.
+ * <p>
+ * All profiles use WAL journaling; they differ in how much durability they trade
+ * for speed:
+ * <ul>
+ * <li>{@link #DURABLE}: fsync on every commit, small page cache, no memory mapping</li>
+ * <li>{@link #BALANCED}: fsync at WAL checkpoints only, larger cache and memory-mapped reads</li>
+ * <li>{@link #BULK_LOAD}: no fsync at all, for imports that can be rerun after a crash</li>
+ * </ul>
+ */
+public enum DatabaseProfile {
+    DURABLE("durable", "FULL", 0L, -2000, "DEFAULT", 5000),
+    BALANCED("balanced", "NORMAL", 256L * 1024 * 1024, -16000, "MEMORY", 5000),
+    BULK_LOAD("bulk-load", "OFF", 256L * 1024 * 1024, -64000, "MEMORY", 30000);
+
+    private final String name;
+    private final String synchronous;
+    private final long mmapSize;
+    private final int cacheSize;
+    private final String tempStore;
+    private final int busyTimeoutMillis;
+
+    DatabaseProfile(String name, String synchronous, long mmapSize, int cacheSize,
+                    String tempStore, int busyTimeoutMillis) {
+        this.name = name;
+        this.synchronous = synchronous;
+        this.mmapSize = mmapSize;
+        this.cacheSize = cacheSize;
+        this.tempStore = tempStore;
+        this.busyTimeoutMillis = busyTimeoutMillis;
+    }
+
+    /**
+     * Apply the profile's pragmas to a newly opened connection
+     */
+    public void apply(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = " + busyTimeoutMillis);
+            stmt.execute("PRAGMA journal_mode = WAL");
+            stmt.execute("PRAGMA synchronous = " + synchronous);
+            stmt.execute("PRAGMA mmap_size = " + mmapSize);
+            // Negative values are a size in KiB rather than a number of pages
+            stmt.execute("PRAGMA cache_size = " + cacheSize);
+            stmt.execute("PRAGMA temp_store = " + tempStore);
+        }
+    }
+
+    /**
+     * Name used in configuration files, e.g. "bulk-load"
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getSynchronous() {
+        return synchronous;
+    }
+
+    public long getMmapSize() {
+        return mmapSize;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public String getTempStore() {
+        return tempStore;
+    }
+
+    public int getBusyTimeoutMillis() {
+        return busyTimeoutMillis;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Look up a profile by its configuration name (case-insensitive) or enum constant name
+     */
+    public static DatabaseProfile fromName(String value) {
+        if (value != null) {
+            String trimmed = value.trim();
+            for (DatabaseProfile profile : values()) {
+                if (profile.name.equalsIgnoreCase(trimmed) || profile.name().equalsIgnoreCase(trimmed)) {
+                    return profile;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unknown database profile: " + value);
+    }
+}
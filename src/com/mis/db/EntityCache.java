@@ -0,0 +1,170 @@
+package com.mis.db;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Bounded LRU cache of entities keyed by ID, shared by all instances of a DAO.
+ * <p>
+ * Entities are mutable, so the cache keeps its own detached copies: values are
+ * copied on the way in and on the way out, and a caller editing an entity it
+ * got from a DAO never changes what other callers see. The DAOs invalidate an
+ * entry whenever they write the row.
+ * <p>
+ * A value read from the database is only stored if nothing was invalidated
+ * since the read started (see {@link #stamp()}), so a slow reader cannot put
+ * back a row that a concurrent writer has just changed. Inside a
+ * {@link UnitOfWork}, values are not stored (they may never be committed) and
+ * invalidations are repeated once the unit commits.
+ */
+public class EntityCache<T> {
+    private static final int DEFAULT_SIZE = 1000;
+
+    private final String name;
+    private final int capacity;
+    private final UnaryOperator<T> copier;
+    private final Map<Integer, T> entries;
+
+    private long invalidations;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    EntityCache(String name, int capacity, UnaryOperator<T> copier) {
+        this.name = name;
+        this.capacity = capacity;
+        this.copier = copier;
+        this.entries = new LinkedHashMap<Integer, T>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, T> eldest) {
+                if (size() > EntityCache.this.capacity) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Create a cache sized by the {@code db.entityCache.size} setting; a size
+     * of 0 disables caching
+     */
+    static <T> EntityCache<T> create(String name, UnaryOperator<T> copier) {
+        DatabaseConfig config = DatabaseConnection.getInstance().getConfig();
+        return new EntityCache<>(name, Math.max(0, config.getInt(DatabaseConfig.ENTITY_CACHE_SIZE, DEFAULT_SIZE)), copier);
+    }
+
+    /**
+     * Get a copy of the cached entity, or null on a miss
+     */
+    T get(int id) {
+        T value;
+        synchronized (this) {
+            value = capacity > 0 ? entries.get(id) : null;
+            if (value != null) {
+                hitCount++;
+            } else {
+                missCount++;
+            }
+        }
+        return value != null ? copier.apply(value) : null;
+    }
+
+    /**
+     * Take a stamp before reading an entity from the database, to pass to
+     * {@link #put(int, Object, long)} afterwards
+     */
+    synchronized long stamp() {
+        return invalidations;
+    }
+
+    /**
+     * Store a copy of an entity read from the database, unless the cache was
+     * invalidated since the stamp was taken
+     */
+    void put(int id, T value, long stamp) {
+        if (capacity == 0 || value == null || UnitOfWork.current() != null) {
+            return;
+        }
+
+        T copy = copier.apply(value);
+        synchronized (this) {
+            if (invalidations == stamp) {
+                entries.put(id, copy);
+            }
+        }
+    }
+
+    /**
+     * Drop the entry of an entity that was written
+     */
+    void invalidate(int id) {
+        remove(id);
+        // Until the write is committed, readers can still load and cache the old row
+        if (UnitOfWork.current() != null) {
+            UnitOfWork.afterCommit(() -> remove(id));
+        }
+    }
+
+    /**
+     * Drop every entry, after a write that may touch many cached entities
+     */
+    public void clear() {
+        removeAll();
+        if (UnitOfWork.current() != null) {
+            UnitOfWork.afterCommit(this::removeAll);
+        }
+    }
+
+    private synchronized void remove(int id) {
+        invalidations++;
+        entries.remove(id);
+    }
+
+    private synchronized void removeAll() {
+        invalidations++;
+        entries.clear();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Fraction of lookups served from the cache, between 0 and 1
+     */
+    public synchronized double getHitRatio() {
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0.0 : (double) hitCount / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s cache: %d/%d entries, hit ratio %.1f%% (%d hits, %d misses, %d evictions)",
+                name, entries.size(), capacity, getHitRatio() * 100, hitCount, missCount, evictionCount);
+    }
+}
@@ -0,0 +1,64 @@
+package com.mis.db;
+
+/**
+ * A committed change to one row of an entity table, or to an unknown set of
+ * rows for bulk operations, published on {@link EntityEvents}
+ */
+public final class EntityChangeEvent {
+    public enum Kind {
+        INSERTED,
+        UPDATED,
+        DELETED,
+        /** Several rows were inserted, updated or deleted at once; reload */
+        BULK
+    }
+
+    private final Class<?> entityType;
+    private final Kind kind;
+    private final int id;
+
+    private EntityChangeEvent(Class<?> entityType, Kind kind, int id) {
+        this.entityType = entityType;
+        this.kind = kind;
+        this.id = id;
+    }
+
+    static EntityChangeEvent inserted(Class<?> entityType, int id) {
+        return new EntityChangeEvent(entityType, Kind.INSERTED, id);
+    }
+
+    static EntityChangeEvent updated(Class<?> entityType, int id) {
+        return new EntityChangeEvent(entityType, Kind.UPDATED, id);
+    }
+
+    static EntityChangeEvent deleted(Class<?> entityType, int id) {
+        return new EntityChangeEvent(entityType, Kind.DELETED, id);
+    }
+
+    static EntityChangeEvent bulk(Class<?> entityType) {
+        return new EntityChangeEvent(entityType, Kind.BULK, 0);
+    }
+
+    /**
+     * The model class of the changed rows, e.g. Animal.class
+     */
+    public Class<?> getEntityType() {
+        return entityType;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * The ID of the changed row; 0 for {@link Kind#BULK}
+     */
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return entityType.getSimpleName() + " " + kind + (kind != Kind.BULK ? " " + id : "");
+    }
+}
@@ -0,0 +1,110 @@
+package com.mis.db;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * In-process bus on which the DAOs announce the rows they insert, update and
+ * delete, so that views can update the rows that changed instead of reloading
+ * everything.
+ * <p>
+ * Events are published once the change is committed: a change made in a
+ * {@link UnitOfWork} is announced when the unit commits, and not at all if it
+ * rolls back. Listeners run on the thread that committed, which is usually
+ * not the event dispatch thread.
+ */
+public final class EntityEvents {
+    // Beyond this many rows, one bulk event costs the listeners less than an event per row
+    private static final int MAX_ROW_EVENTS = 256;
+
+    private static final Map<Class<?>, List<Consumer<EntityChangeEvent>>> LISTENERS = new ConcurrentHashMap<>();
+
+    private EntityEvents() {
+    }
+
+    /**
+     * Listen to the changes of one entity type, e.g. Animal.class
+     */
+    public static void subscribe(Class<?> entityType, Consumer<EntityChangeEvent> listener) {
+        LISTENERS.computeIfAbsent(entityType, type -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    public static void unsubscribe(Class<?> entityType, Consumer<EntityChangeEvent> listener) {
+        List<Consumer<EntityChangeEvent>> listeners = LISTENERS.get(entityType);
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    static void inserted(Class<?> entityType, int id) {
+        publish(EntityChangeEvent.inserted(entityType, id));
+    }
+
+    static void updated(Class<?> entityType, int id) {
+        publish(EntityChangeEvent.updated(entityType, id));
+    }
+
+    static void deleted(Class<?> entityType, int id) {
+        publish(EntityChangeEvent.deleted(entityType, id));
+    }
+
+    /**
+     * Announce inserted rows one by one, or as a bulk change if there are
+     * many of them
+     */
+    static void insertedAll(Class<?> entityType, int[] ids) {
+        if (ids.length > MAX_ROW_EVENTS) {
+            bulk(entityType);
+            return;
+        }
+        for (int id : ids) {
+            inserted(entityType, id);
+        }
+    }
+
+    /**
+     * Announce deleted rows one by one, or as a bulk change if there are
+     * many of them
+     */
+    static void deletedAll(Class<?> entityType, int[] ids) {
+        if (ids.length > MAX_ROW_EVENTS) {
+            bulk(entityType);
+            return;
+        }
+        for (int id : ids) {
+            deleted(entityType, id);
+        }
+    }
+
+    static void bulk(Class<?> entityType) {
+        publish(EntityChangeEvent.bulk(entityType));
+    }
+
+    /**
+     * Deliver an event once the current unit of work commits, or right away
+     * outside of one
+     */
+    static void publish(EntityChangeEvent event) {
+        if (LISTENERS.containsKey(event.getEntityType())) {
+            UnitOfWork.afterCommit(() -> deliver(event));
+        }
+    }
+
+    private static void deliver(EntityChangeEvent event) {
+        List<Consumer<EntityChangeEvent>> listeners = LISTENERS.get(event.getEntityType());
+        if (listeners == null) {
+            return;
+        }
+        for (Consumer<EntityChangeEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                // The change is committed; a failing view must not hide that from the caller
+                e.printStackTrace();
+            }
+        }
+    }
+}
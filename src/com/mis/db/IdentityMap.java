@@ -0,0 +1,113 @@
+package com.mis.db;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Scope in which each row is represented by a single object: inside a scope,
+ * the DAOs hand out the same Owner, Box or Animal instance for the same ID
+ * instead of querying and mapping it again.
+ * <p>
+ * A scope is bound to the opening thread and is meant to last one request or
+ * one screen refresh, so it never serves data across user actions:
+ * <pre>
+ * try (IdentityMap scope = IdentityMap.open()) {
+ *     ...
+ * }
+ * </pre>
+ * Opening a scope while one is already active joins it; the outermost
+ * {@link #close()} ends it.
+ */
+public final class IdentityMap implements AutoCloseable {
+    private static final ThreadLocal<IdentityMap> CURRENT = new ThreadLocal<>();
+
+    private final Map<Class<?>, Map<Integer, Object>> entities = new HashMap<>();
+    private int depth;
+
+    private IdentityMap() {
+    }
+
+    /**
+     * Open a scope on the current thread, or join the one already open
+     */
+    public static IdentityMap open() {
+        IdentityMap map = CURRENT.get();
+        if (map == null) {
+            map = new IdentityMap();
+            CURRENT.set(map);
+        }
+        map.depth++;
+        return map;
+    }
+
+    /**
+     * The scope open on the current thread, or null
+     */
+    static IdentityMap current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Get the instance registered for an ID in the current scope, or null when
+     * it is not known or no scope is open
+     */
+    static <T> T lookup(Class<T> type, int id) {
+        IdentityMap map = CURRENT.get();
+        return map != null ? map.get(type, id) : null;
+    }
+
+    /**
+     * Return the instance that represents a freshly mapped entity in the
+     * current scope, or the entity itself when no scope is open
+     */
+    static <T> T canonical(Class<T> type, int id, T entity) {
+        IdentityMap map = CURRENT.get();
+        return map != null ? map.register(type, id, entity) : entity;
+    }
+
+    /**
+     * Drop a deleted entity from the current scope, if any
+     */
+    static void forget(Class<?> type, int id) {
+        IdentityMap map = CURRENT.get();
+        if (map != null) {
+            map.remove(type, id);
+        }
+    }
+
+    /**
+     * Get the instance registered for an ID, or null
+     */
+    <T> T get(Class<T> type, int id) {
+        Map<Integer, Object> byId = entities.get(type);
+        return byId != null ? type.cast(byId.get(id)) : null;
+    }
+
+    /**
+     * Register an instance and return the one that represents its ID in this
+     * scope: the given instance if the ID was not known yet, the earlier one
+     * otherwise
+     */
+    <T> T register(Class<T> type, int id, T entity) {
+        Object existing = entities.computeIfAbsent(type, k -> new HashMap<>()).putIfAbsent(id, entity);
+        return existing != null ? type.cast(existing) : entity;
+    }
+
+    /**
+     * Forget the instance registered for an ID, after it was deleted
+     */
+    void remove(Class<?> type, int id) {
+        Map<Integer, Object> byId = entities.get(type);
+        if (byId != null) {
+            byId.remove(id);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (--depth == 0) {
+            entities.clear();
+            CURRENT.remove();
+        }
+    }
+}
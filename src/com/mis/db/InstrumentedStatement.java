@@ -0,0 +1,197 @@
+package com.mis.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Wraps a Statement or PreparedStatement so that its executions are recorded
+ * in {@link QueryMetrics}.
+ * <p>
+ * An update is recorded when it returns. A query is timed from executeQuery
+ * through every {@code next()} of its result set and recorded when the result
+ * set or the statement is closed, or the statement runs again.
+ */
+final class InstrumentedStatement implements InvocationHandler {
+    private final Statement stmt;
+    private final String sql;
+    private final QueryMetrics metrics;
+
+    // The query whose result set is being read
+    private QueryStats openQuery;
+    private long openNanos;
+    private long openRows;
+
+    private InstrumentedStatement(Statement stmt, String sql, QueryMetrics metrics) {
+        this.stmt = stmt;
+        this.sql = sql;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Wrap a statement
+     *
+     * @param sql the SQL of a PreparedStatement, or null for a plain Statement
+     *            (its SQL is taken from each execute call)
+     */
+    static <T extends Statement> T wrap(Class<T> type, T stmt, String sql, QueryMetrics metrics) {
+        return type.cast(Proxy.newProxyInstance(
+                type.getClassLoader(),
+                new Class<?>[] { type },
+                new InstrumentedStatement(stmt, sql, metrics)));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "executeQuery":
+                finishQuery();
+                return executeQuery(method, args);
+            case "execute":
+            case "executeUpdate":
+            case "executeLargeUpdate":
+            case "executeBatch":
+            case "executeLargeBatch":
+                finishQuery();
+                return executeUpdate(method, args);
+            case "close":
+                finishQuery();
+                break;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                break;
+        }
+        return invokeTarget(stmt, method, args);
+    }
+
+    private Object executeQuery(Method method, Object[] args) throws Throwable {
+        QueryStats stats = metrics.statsFor(sqlOf(args));
+        long start = System.nanoTime();
+        ResultSet rs;
+        try {
+            rs = (ResultSet) invokeTarget(stmt, method, args);
+        } catch (Throwable e) {
+            metrics.record(stats, System.nanoTime() - start, 0, true);
+            throw e;
+        }
+
+        openQuery = stats;
+        openNanos = System.nanoTime() - start;
+        openRows = 0;
+        return Proxy.newProxyInstance(
+                ResultSet.class.getClassLoader(),
+                new Class<?>[] { ResultSet.class },
+                new ResultSetHandler(rs, stats));
+    }
+
+    private Object executeUpdate(Method method, Object[] args) throws Throwable {
+        if (sql == null && method.getName().endsWith("Batch")) {
+            // Batches of plain SQL strings have no single shape
+            return invokeTarget(stmt, method, args);
+        }
+
+        QueryStats stats = metrics.statsFor(sqlOf(args));
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = invokeTarget(stmt, method, args);
+        } catch (Throwable e) {
+            metrics.record(stats, System.nanoTime() - start, 0, true);
+            throw e;
+        }
+        metrics.record(stats, System.nanoTime() - start, affectedRows(result), false);
+        return result;
+    }
+
+    private String sqlOf(Object[] args) {
+        return args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+    }
+
+    private long affectedRows(Object result) throws SQLException {
+        if (result instanceof Number) {
+            return Math.max(0, ((Number) result).longValue());
+        }
+        if (result instanceof Boolean) {
+            // execute() returns true for a query, whose rows are not read here
+            return (Boolean) result ? 0 : Math.max(0, stmt.getUpdateCount());
+        }
+        long rows = 0;
+        if (result instanceof int[]) {
+            for (int count : (int[]) result) {
+                rows += Math.max(0, count);
+            }
+        } else if (result instanceof long[]) {
+            for (long count : (long[]) result) {
+                rows += Math.max(0, count);
+            }
+        }
+        return rows;
+    }
+
+    private void finishQuery() {
+        if (openQuery != null) {
+            metrics.record(openQuery, openNanos, openRows, false);
+            openQuery = null;
+        }
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Result set handle counting rows and the time spent fetching them
+     */
+    private class ResultSetHandler implements InvocationHandler {
+        private final ResultSet rs;
+        private final QueryStats stats;
+
+        ResultSetHandler(ResultSet rs, QueryStats stats) {
+            this.rs = rs;
+            this.stats = stats;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next":
+                    return next(method);
+                case "close":
+                    if (openQuery == stats) {
+                        finishQuery();
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            return invokeTarget(rs, method, args);
+        }
+
+        private Object next(Method method) throws Throwable {
+            long start = System.nanoTime();
+            boolean hasRow = (Boolean) invokeTarget(rs, method, null);
+            if (openQuery == stats) {
+                openNanos += System.nanoTime() - start;
+                if (hasRow) {
+                    openRows++;
+                }
+            }
+            return hasRow;
+        }
+    }
+}
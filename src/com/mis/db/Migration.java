@@ -0,0 +1,36 @@
+package com.mis.db;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One versioned step of the database schema.
+ * <p>
+ * Every statement must be idempotent (CREATE ... IF NOT EXISTS and the like) so
+ * that a step can safely run against a database created before versioning was
+ * introduced.
+ */
+public final class Migration {
+    private final int version;
+    private final String description;
+    private final List<String> statements;
+
+    public Migration(int version, String description, String... statements) {
+        this.version = version;
+        this.description = description;
+        this.statements = Collections.unmodifiableList(Arrays.asList(statements));
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public List<String> getStatements() {
+        return statements;
+    }
+}
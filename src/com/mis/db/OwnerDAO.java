@@ -6,33 +6,40 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import com.mis.model.DirtyTracker;
 import com.mis.model.Owner;
+import com.mis.model.OwnerRow;
 
 /**
  * Data Access Object for Owner entities
  */
 public class OwnerDAO {
-    private Connection connection;
+    private static final String INSERT_QUERY = "INSERT INTO owners (first_name, last_name, email, phone, address) " +
+                                               "VALUES (?, ?, ?, ?, ?)";
     
-    public OwnerDAO() {
-        this.connection = DatabaseConnection.getInstance().getConnection();
+    private static final EntityCache<Owner> CACHE = EntityCache.create("owners", Owner::new);
+    
+    /**
+     * The cache in front of getById and getByIds, shared by all Owner DAOs
+     */
+    public static EntityCache<Owner> getCache() {
+        return CACHE;
     }
     
     /**
      * Save a new owner to the database
      */
     public int save(Owner owner) throws SQLException {
-        String query = "INSERT INTO owners (first_name, last_name, email, phone, address) " +
-                       "VALUES (?, ?, ?, ?, ?)";
-        
-        try (PreparedStatement stmt = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setString(1, owner.getFirstName());
-            stmt.setString(2, owner.getLastName());
-            stmt.setString(3, owner.getEmail());
-            stmt.setString(4, owner.getPhone());
-            stmt.setString(5, owner.getAddress());
+        try (Connection connection = DatabaseConnection.getInstance().getConnection();
+             PreparedStatement stmt = connection.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS)) {
+            bindInsert(stmt, owner);
             
             int affectedRows = stmt.executeUpdate();
             
@@ -44,6 +51,7 @@ public class OwnerDAO {
                 if (generatedKeys.next()) {
                     int ownerId = generatedKeys.getInt(1);
                     owner.setId(ownerId);
+                    EntityEvents.inserted(Owner.class, ownerId);
                     return ownerId;
                 } else {
                     throw new SQLException("Creating owner failed, no ID obtained.");
@@ -52,18 +60,48 @@ public class OwnerDAO {
         }
     }
     
+    /**
+     * Save many new owners in a single transaction using JDBC batches. The
+     * generated IDs are set on the owners.
+     *
+     * @return the number of owners saved
+     */
+    public int saveAll(Collection<Owner> owners) throws SQLException {
+        if (owners.isEmpty()) {
+            return 0;
+        }
+        
+        return DatabaseConnection.getInstance().inTransaction(connection -> {
+            int saved = SqlHelper.insertBatch(connection, INSERT_QUERY, owners, this::bindInsert, Owner::setId);
+            EntityEvents.bulk(Owner.class);
+            return saved;
+        });
+    }
+    
     /**
      * Get an owner by ID
      */
     public Owner getById(int id) throws SQLException {
+        Owner cached = IdentityMap.lookup(Owner.class, id);
+        if (cached == null) {
+            cached = CACHE.get(id);
+        }
+        if (cached != null) {
+            return IdentityMap.canonical(Owner.class, id, cached);
+        }
+        
         String query = "SELECT * FROM owners WHERE id = ?";
+        long stamp = CACHE.stamp();
         
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
             stmt.setInt(1, id);
             
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return mapResultSetToOwner(rs);
+                    Owner owner = mapResultSetToOwner(rs);
+                    CACHE.put(id, owner, stamp);
+                    return IdentityMap.canonical(Owner.class, id, owner);
                 }
             }
         }
@@ -71,6 +109,55 @@ public class OwnerDAO {
         return null;
     }
     
+    /**
+     * Get the owners with the given IDs, keyed by ID
+     */
+    public Map<Integer, Owner> getByIds(Collection<Integer> ids) throws SQLException {
+        Map<Integer, Owner> owners = new HashMap<>();
+        List<Integer> missing = new ArrayList<>(ids.size());
+        
+        // Only query the IDs that neither the identity map scope nor the cache know
+        for (Integer id : ids) {
+            Owner cached = IdentityMap.lookup(Owner.class, id);
+            if (cached == null) {
+                cached = CACHE.get(id);
+            }
+            if (cached != null) {
+                owners.put(id, IdentityMap.canonical(Owner.class, id, cached));
+            } else {
+                missing.add(id);
+            }
+        }
+        
+        if (missing.isEmpty()) {
+            return owners;
+        }
+        
+        long stamp = CACHE.stamp();
+        
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection()) {
+            for (List<Integer> chunk : SqlHelper.partition(missing)) {
+                String query = "SELECT * FROM owners WHERE id IN (" + SqlHelper.placeholders(chunk.size()) + ")";
+                
+                try (PreparedStatement stmt = connection.prepareStatement(query)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        stmt.setInt(i + 1, chunk.get(i));
+                    }
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            Owner owner = mapResultSetToOwner(rs);
+                            CACHE.put(owner.getId(), owner, stamp);
+                            owners.put(owner.getId(), IdentityMap.canonical(Owner.class, owner.getId(), owner));
+                        }
+                    }
+                }
+            }
+        }
+        
+        return owners;
+    }
+    
     /**
      * Get all owners
      */
@@ -78,11 +165,13 @@ public class OwnerDAO {
         String query = "SELECT * FROM owners";
         List<Owner> owners = new ArrayList<>();
         
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(query);
+             ResultSet rs = stmt.executeQuery()) {
             
             while (rs.next()) {
-                owners.add(mapResultSetToOwner(rs));
+                Owner owner = mapResultSetToOwner(rs);
+                owners.add(IdentityMap.canonical(Owner.class, owner.getId(), owner));
             }
         }
         
@@ -90,44 +179,220 @@ public class OwnerDAO {
     }
     
     /**
-     * Update an owner in the database
+     * Get the IDs of every owner, so that a list view can count its rows and
+     * load only those it shows with {@link #getByIds(Collection)}
      */
-    public boolean update(Owner owner) throws SQLException {
-        String query = "UPDATE owners SET first_name = ?, last_name = ?, email = ?, " +
-                      "phone = ?, address = ? WHERE id = ?";
-        
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, owner.getFirstName());
-            stmt.setString(2, owner.getLastName());
-            stmt.setString(3, owner.getEmail());
-            stmt.setString(4, owner.getPhone());
-            stmt.setString(5, owner.getAddress());
-            stmt.setInt(6, owner.getId());
-            
-            return stmt.executeUpdate() > 0;
+    public int[] getIds() throws SQLException {
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement("SELECT id FROM owners ORDER BY id")) {
+            return SqlHelper.readIds(stmt);
         }
     }
     
     /**
-     * Delete an owner from the database
+     * Get the IDs of the owners {@link #search(String, int)} finds, in the
+     * same order, without reading the owners
      */
-    public boolean delete(int id) throws SQLException {
-        // First, update any animals owned by this owner to have no owner
-        String updateAnimalsQuery = "UPDATE animals SET owner_id = NULL WHERE owner_id = ?";
+    public int[] searchIds(String text, int limit) throws SQLException {
+        String match = SqlHelper.fullTextQuery(text);
+        if (match == null) {
+            return new int[0];
+        }
         
-        try (PreparedStatement stmt = connection.prepareStatement(updateAnimalsQuery)) {
-            stmt.setInt(1, id);
-            stmt.executeUpdate();
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(
+                     "SELECT rowid FROM owners_fts WHERE owners_fts MATCH ? ORDER BY rank LIMIT ?")) {
+            stmt.setString(1, match);
+            stmt.setInt(2, limit);
+            return SqlHelper.readIds(stmt);
         }
+    }
+    
+    /**
+     * Get the list view rows of the owners with the given IDs, with the number
+     * of animals of each, in no particular order; IDs of deleted owners are
+     * skipped
+     */
+    public List<OwnerRow> getRowsByIds(Collection<Integer> ids) throws SQLException {
+        List<OwnerRow> rows = new ArrayList<>(ids.size());
         
-        // Then delete the owner
-        String query = "DELETE FROM owners WHERE id = ?";
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection()) {
+            for (List<Integer> chunk : SqlHelper.partition(ids)) {
+                // The count is read from idx_animals_owner_id
+                String query = "SELECT o.id, o.first_name, o.last_name, o.email, o.phone, o.address, " +
+                              "(SELECT COUNT(*) FROM animals a WHERE a.owner_id = o.id) AS animal_count " +
+                              "FROM owners o WHERE o.id IN (" + SqlHelper.placeholders(chunk.size()) + ")";
+                
+                try (PreparedStatement stmt = connection.prepareStatement(query)) {
+                    SqlHelper.bindIds(stmt, 1, chunk);
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            rows.add(new OwnerRow(
+                                    rs.getInt("id"),
+                                    rs.getString("first_name"),
+                                    rs.getString("last_name"),
+                                    rs.getString("email"),
+                                    rs.getString("phone"),
+                                    rs.getString("address"),
+                                    rs.getInt("animal_count")));
+                        }
+                    }
+                }
+            }
+        }
         
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setInt(1, id);
+        return rows;
+    }
+    
+    /**
+     * Search owners by name, email, phone or address, best matches first.
+     * Every word of the text must be the start of a word of the owner.
+     */
+    public List<Owner> search(String text, int limit) throws SQLException {
+        List<Owner> owners = new ArrayList<>();
+        String match = SqlHelper.fullTextQuery(text);
+        if (match == null) {
+            return owners;
+        }
+        
+        String query = "SELECT o.* FROM owners_fts f JOIN owners o ON o.id = f.rowid " +
+                      "WHERE f.owners_fts MATCH ? ORDER BY f.rank LIMIT ?";
+        
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
+            stmt.setString(1, match);
+            stmt.setInt(2, limit);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Owner owner = mapResultSetToOwner(rs);
+                    owners.add(IdentityMap.canonical(Owner.class, owner.getId(), owner));
+                }
+            }
+        }
+        
+        return owners;
+    }
+    
+    /**
+     * Get one page of owners using keyset pagination on the primary key
+     *
+     * @param afterId continuation token from the previous page, or null for the first page
+     */
+    public Page<Owner> page(Integer afterId, int limit, Page.Sort sort) throws SQLException {
+        List<Owner> rows = new ArrayList<>();
+        
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(SqlHelper.keysetQuery("owners", sort))) {
+            SqlHelper.bindKeyset(stmt, afterId, limit, sort);
             
-            return stmt.executeUpdate() > 0;
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Owner owner = mapResultSetToOwner(rs);
+                    rows.add(IdentityMap.canonical(Owner.class, owner.getId(), owner));
+                }
+            }
+        }
+        
+        return SqlHelper.toPage(rows, limit, Owner::getId);
+    }
+    
+    /**
+     * Stream all owners straight from a live ResultSet, in constant memory. The
+     * stream holds a pooled connection until it is exhausted or closed, so use
+     * it in a try-with-resources block.
+     */
+    public Stream<Owner> stream(int fetchSize) throws SQLException {
+        return Cursor.open("SELECT * FROM owners", fetchSize).stream(this::mapResultSetToOwner);
+    }
+    
+    /**
+     * Stream all owners with the default fetch size
+     */
+    public Stream<Owner> stream() throws SQLException {
+        return stream(Cursor.DEFAULT_FETCH_SIZE);
+    }
+    
+    /**
+     * Process every owner in constant memory; the cursor is always closed
+     */
+    public void forEach(Consumer<? super Owner> action) throws SQLException {
+        Cursor.forEach(stream(), action);
+    }
+    
+    /**
+     * Update an owner in the database
+     */
+    public boolean update(Owner owner) throws SQLException {
+        DirtyTracker changes = owner.getDirtyTracker();
+        PartialUpdate update = new PartialUpdate("owners")
+                .setIf(changes.isDirty("firstName"), "first_name", owner.getFirstName())
+                .setIf(changes.isDirty("lastName"), "last_name", owner.getLastName())
+                .setIf(changes.isDirty("email"), "email", owner.getEmail())
+                .setIf(changes.isDirty("phone"), "phone", owner.getPhone())
+                .setIf(changes.isDirty("address"), "address", owner.getAddress());
+        
+        if (update.isEmpty()) {
+            // Nothing changed since the owner was loaded
+            return true;
         }
+        
+        try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+            boolean updated = update.execute(connection, owner.getId()) > 0;
+            IdentityMap.forget(Owner.class, owner.getId());
+            CACHE.invalidate(owner.getId());
+            if (updated) {
+                changes.markClean();
+                EntityEvents.updated(Owner.class, owner.getId());
+            }
+            return updated;
+        }
+    }
+    
+    /**
+     * Delete an owner from the database
+     */
+    public boolean delete(int id) throws SQLException {
+        IdentityMap.forget(Owner.class, id);
+        
+        // Detaching the animals and deleting the owner are committed together
+        return DatabaseConnection.getInstance().inTransaction(connection -> {
+            // First, update any animals owned by this owner to have no owner
+            String updateAnimalsQuery = "UPDATE animals SET owner_id = NULL WHERE owner_id = ?";
+            
+            try (PreparedStatement stmt = connection.prepareStatement(updateAnimalsQuery)) {
+                stmt.setInt(1, id);
+                stmt.executeUpdate();
+            }
+            
+            // Then delete the owner
+            String query = "DELETE FROM owners WHERE id = ?";
+            
+            try (PreparedStatement stmt = connection.prepareStatement(query)) {
+                stmt.setInt(1, id);
+                
+                boolean deleted = stmt.executeUpdate() > 0;
+                CACHE.invalidate(id);
+                if (deleted) {
+                    EntityEvents.deleted(Owner.class, id);
+                }
+                // The animals that pointed to this owner were detached above
+                AnimalDAO.getCache().clear();
+                return deleted;
+            }
+        });
+    }
+    
+    /**
+     * Bind the columns of an owner to the parameters of INSERT_QUERY
+     */
+    private void bindInsert(PreparedStatement stmt, Owner owner) throws SQLException {
+        stmt.setString(1, owner.getFirstName());
+        stmt.setString(2, owner.getLastName());
+        stmt.setString(3, owner.getEmail());
+        stmt.setString(4, owner.getPhone());
+        stmt.setString(5, owner.getAddress());
     }
     
     /**
@@ -142,6 +407,7 @@ public class OwnerDAO {
         owner.setPhone(rs.getString("phone"));
         owner.setAddress(rs.getString("address"));
         
+        owner.getDirtyTracker().markClean();
         return owner;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,55 @@
+package com.mis.db;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated query.
+ * <p>
+ * Pages are ordered by primary key. To get the next page, pass
+ * {@link #getNextAfterId()} as the {@code afterId} of the next call; it is
+ * {@code null} on the last page. Because each page seeks directly to its first
+ * key through the primary key index, fetching a page costs the same however
+ * deep the caller has scrolled.
+ */
+public final class Page<T> {
+    /**
+     * Direction in which pages walk the primary key
+     */
+    public enum Sort {
+        ASCENDING,
+        DESCENDING
+    }
+
+    private final List<T> items;
+    private final Integer nextAfterId;
+
+    Page(List<T> items, Integer nextAfterId) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextAfterId = nextAfterId;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * Continuation token: the key to pass as afterId to fetch the following
+     * page, or null when this is the last page
+     */
+    public Integer getNextAfterId() {
+        return nextAfterId;
+    }
+
+    public boolean hasNext() {
+        return nextAfterId != null;
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    public int size() {
+        return items.size();
+    }
+}
@@ -0,0 +1,61 @@
+package com.mis.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds an UPDATE of one row by ID that only sets the columns that changed
+ */
+final class PartialUpdate {
+    private final String table;
+    private final List<String> columns = new ArrayList<>();
+    private final List<Object> values = new ArrayList<>();
+
+    PartialUpdate(String table) {
+        this.table = table;
+    }
+
+    /**
+     * Set a column if the given condition (usually "the field is dirty") holds.
+     * Values are bound with setObject, so null writes NULL.
+     */
+    PartialUpdate setIf(boolean condition, String column, Object value) {
+        if (condition) {
+            columns.add(column);
+            values.add(value);
+        }
+        return this;
+    }
+
+    boolean isEmpty() {
+        return columns.isEmpty();
+    }
+
+    /**
+     * Run the update on the row with the given ID
+     *
+     * @return the number of rows updated
+     */
+    int execute(Connection connection, int id) throws SQLException {
+        StringBuilder query = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                query.append(", ");
+            }
+            query.append(columns.get(i)).append(" = ?");
+        }
+        query.append(" WHERE id = ?");
+
+        try (PreparedStatement stmt = connection.prepareStatement(query.toString())) {
+            for (int i = 0; i < values.size(); i++) {
+                stmt.setObject(i + 1, values.get(i));
+            }
+            stmt.setInt(values.size() + 1, id);
+
+            return stmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.mis.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Latency statistics of every SQL statement run through the connection pools,
+ * grouped by SQL shape, plus a slow query log.
+ * <p>
+ * Statements handed out by the pools are wrapped so that each execution is
+ * timed: an update from the call to executeUpdate, a query from executeQuery
+ * through its last {@code next()}, counting only the time spent in the driver
+ * and not the time the caller spends mapping rows. Executions taking longer
+ * than {@code db.slowQuery.millis} are printed to standard error with the DAO
+ * method that ran them.
+ * <p>
+ * The statistics are read in-process:
+ * <pre>
+ * DatabaseConnection.getInstance().getQueryMetrics().report(10)
+ * </pre>
+ */
+public class QueryMetrics {
+    // Raw SQL strings are mapped to their shape once; beyond this many distinct
+    // strings (literals built into the SQL), shapes are computed on every call
+    private static final int MAX_SQL_ALIASES = 10000;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\?(?:, ?\\?)+\\)");
+    private static final Set<String> INFRASTRUCTURE = new HashSet<>(Arrays.asList(
+            "ConnectionPool", "StatementCache", "InstrumentedStatement", "QueryMetrics", "QueryStats",
+            "Cursor", "SqlHelper", "PartialUpdate", "DatabaseConnection", "UnitOfWork", "DatabaseExecutor"));
+
+    private final Map<String, QueryStats> byShape = new ConcurrentHashMap<>();
+    private final Map<String, QueryStats> bySql = new ConcurrentHashMap<>();
+    private volatile long slowQueryMillis;
+
+    /**
+     * @param slowQueryMillis executions at least this long are logged; 0 or
+     *                        less disables the log
+     */
+    public QueryMetrics(long slowQueryMillis) {
+        this.slowQueryMillis = slowQueryMillis;
+    }
+
+    /**
+     * Get the statistics an execution of some SQL is recorded into
+     */
+    QueryStats statsFor(String sql) {
+        QueryStats stats = bySql.get(sql);
+        if (stats != null) {
+            return stats;
+        }
+
+        stats = byShape.computeIfAbsent(shapeOf(sql), shape -> new QueryStats(shape, findCaller()));
+        if (bySql.size() < MAX_SQL_ALIASES) {
+            bySql.put(sql, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Record one execution, and log it if it was slow
+     */
+    void record(QueryStats stats, long nanos, long rows, boolean failed) {
+        long micros = nanos / 1000;
+        stats.record(micros, rows, failed);
+
+        long threshold = slowQueryMillis;
+        if (threshold > 0 && micros >= threshold * 1000) {
+            System.err.printf("Slow query: %.1f ms, %d rows%s, %s: %s%n", micros / 1000.0, rows,
+                    failed ? ", failed" : "", findCaller(), stats.getSql());
+        }
+    }
+
+    /**
+     * Statistics of every SQL shape, the most time-consuming first
+     */
+    public List<QueryStats> getStats() {
+        List<QueryStats> stats = new ArrayList<>(byShape.values());
+        stats.sort(Comparator.comparingLong(QueryStats::getTotalMicros).reversed());
+        return stats;
+    }
+
+    /**
+     * Statistics of one SQL statement, or null if it never ran
+     */
+    public QueryStats getStats(String sql) {
+        return byShape.get(shapeOf(sql));
+    }
+
+    /**
+     * Clear every statistic, e.g. before measuring a scenario
+     */
+    public void reset() {
+        for (QueryStats stats : byShape.values()) {
+            stats.reset();
+        }
+    }
+
+    /**
+     * A text report of the most time-consuming SQL shapes, one per line
+     */
+    public String report(int limit) {
+        StringBuilder report = new StringBuilder();
+        for (QueryStats stats : getStats()) {
+            if (limit <= 0 || stats.getExecutionCount() == 0) {
+                break;
+            }
+            report.append(stats).append(System.lineSeparator());
+            limit--;
+        }
+        return report.toString();
+    }
+
+    public long getSlowQueryMillis() {
+        return slowQueryMillis;
+    }
+
+    public void setSlowQueryMillis(long slowQueryMillis) {
+        this.slowQueryMillis = slowQueryMillis;
+    }
+
+    /**
+     * Normalize SQL so that statements differing only in spacing or in the
+     * length of an IN list are counted together
+     */
+    static String shapeOf(String sql) {
+        String shape = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        return IN_LIST.matcher(shape).replaceAll("(?, ...)");
+    }
+
+    /**
+     * The first application method on the stack, e.g. "AnimalDAO.getRows"
+     */
+    private static String findCaller() {
+        return StackWalker.getInstance().walk(frames -> frames
+                .filter(frame -> frame.getClassName().startsWith("com.mis.")
+                        && !INFRASTRUCTURE.contains(simpleName(frame.getClassName())))
+                .findFirst()
+                .map(frame -> simpleName(frame.getClassName()) + "." + methodName(frame.getMethodName()))
+                .orElse("unknown"));
+    }
+
+    private static String simpleName(String className) {
+        String name = className.substring(className.lastIndexOf('.') + 1);
+        int nested = name.indexOf('$');
+        return nested >= 0 ? name.substring(0, nested) : name;
+    }
+
+    private static String methodName(String name) {
+        // Lambdas are compiled to "lambda$moveToBox$3"
+        if (name.startsWith("lambda$")) {
+            int end = name.indexOf('$', 7);
+            return end > 0 ? name.substring(7, end) : name;
+        }
+        return name;
+    }
+}
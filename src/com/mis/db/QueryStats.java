@@ -0,0 +1,81 @@
+package com.mis.db;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Execution statistics of one SQL shape (see {@link QueryMetrics})
+ */
+public class QueryStats {
+    private final String sql;
+    private final String caller;
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    QueryStats(String sql, String caller) {
+        this.sql = sql;
+        this.caller = caller;
+    }
+
+    void record(long micros, long rowCount, boolean failed) {
+        latency.record(micros);
+        rows.add(rowCount);
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    void reset() {
+        latency.reset();
+        rows.reset();
+        errors.reset();
+    }
+
+    /**
+     * The normalized SQL, with IN lists collapsed to "(?, ...)"
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * The DAO method that first ran this SQL, e.g. "AnimalDAO.getRows"
+     */
+    public String getCaller() {
+        return caller;
+    }
+
+    public long getExecutionCount() {
+        return latency.getCount();
+    }
+
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    /**
+     * Rows returned by queries, or changed by updates, over all executions
+     */
+    public long getRowCount() {
+        return rows.sum();
+    }
+
+    /**
+     * Time spent in the database over all executions
+     */
+    public long getTotalMicros() {
+        return Math.round(latency.getMeanMicros() * latency.getCount());
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d executions, %d rows, total %.1f ms, p50 %.2f ms, p99 %.2f ms, max %.2f ms%s: %s",
+                caller, getExecutionCount(), getRowCount(), getTotalMicros() / 1000.0,
+                latency.getPercentileMicros(50) / 1000.0, latency.getPercentileMicros(99) / 1000.0,
+                latency.getMaxMicros() / 1000.0, getErrorCount() > 0 ? ", " + getErrorCount() + " errors" : "", sql);
+    }
+}
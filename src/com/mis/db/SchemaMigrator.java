@@ -0,0 +1,195 @@
+package com.mis.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Brings the database schema up to date.
+ * <p>
+ * The schema version is kept in SQLite's {@code PRAGMA user_version}. Each
+ * {@link Migration} newer than the stored version runs in its own transaction,
+ * together with the update of the version number. When the stored version is
+ * already the latest, no DDL is executed at all.
+ */
+public class SchemaMigrator {
+    private final List<Migration> migrations;
+
+    public SchemaMigrator() {
+        this(defaultMigrations());
+    }
+
+    public SchemaMigrator(List<Migration> migrations) {
+        List<Migration> sorted = new ArrayList<>(migrations);
+        sorted.sort((a, b) -> Integer.compare(a.getVersion(), b.getVersion()));
+        this.migrations = Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * The version the schema has once every migration has been applied
+     */
+    public int getLatestVersion() {
+        return migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).getVersion();
+    }
+
+    /**
+     * The migrations, oldest first
+     */
+    public List<Migration> getMigrations() {
+        return migrations;
+    }
+
+    /**
+     * Apply every pending migration
+     *
+     * @return the number of migrations applied
+     */
+    public int migrate(Connection connection) throws SQLException {
+        int currentVersion = getCurrentVersion(connection);
+        if (currentVersion >= getLatestVersion()) {
+            return 0;
+        }
+
+        int applied = 0;
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+
+        try {
+            for (Migration migration : migrations) {
+                if (migration.getVersion() <= currentVersion) {
+                    continue;
+                }
+
+                try (Statement stmt = connection.createStatement()) {
+                    for (String sql : migration.getStatements()) {
+                        stmt.execute(sql);
+                    }
+                    // PRAGMA does not accept bind parameters
+                    stmt.execute("PRAGMA user_version = " + migration.getVersion());
+                    connection.commit();
+                    applied++;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw new SQLException("Migration " + migration.getVersion() + " ("
+                            + migration.getDescription() + ") failed: " + e.getMessage(), e);
+                }
+            }
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        return applied;
+    }
+
+    /**
+     * Read the schema version stored in the database
+     */
+    public int getCurrentVersion(Connection connection) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("PRAGMA user_version");
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * The migrations of the application schema, oldest first
+     */
+    static List<Migration> defaultMigrations() {
+        List<Migration> migrations = new ArrayList<>();
+
+        migrations.add(new Migration(1, "Create base tables",
+                "CREATE TABLE IF NOT EXISTS owners (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "first_name TEXT NOT NULL," +
+                        "last_name TEXT NOT NULL," +
+                        "email TEXT," +
+                        "phone TEXT," +
+                        "address TEXT" +
+                        ")",
+                "CREATE TABLE IF NOT EXISTS boxes (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "name TEXT NOT NULL," +
+                        "location TEXT," +
+                        "status TEXT NOT NULL" +
+                        ")",
+                "CREATE TABLE IF NOT EXISTS animals (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "name TEXT NOT NULL," +
+                        "species TEXT NOT NULL," +
+                        "breed TEXT," +
+                        "birth_date TEXT," +
+                        "gender TEXT," +
+                        "owner_id INTEGER," +
+                        "box_id INTEGER," +
+                        "FOREIGN KEY (owner_id) REFERENCES owners(id)," +
+                        "FOREIGN KEY (box_id) REFERENCES boxes(id)" +
+                        ")",
+                "CREATE TABLE IF NOT EXISTS treatments (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "animal_id INTEGER NOT NULL," +
+                        "type TEXT NOT NULL," +
+                        "name TEXT NOT NULL," +
+                        "description TEXT," +
+                        "administration_date TEXT," +
+                        "next_due_date TEXT," +
+                        "administered BOOLEAN DEFAULT 0," +
+                        "FOREIGN KEY (animal_id) REFERENCES animals(id)" +
+                        ")"));
+
+        // Treatments are read per animal (ordered by id, which the index carries as
+        // its rowid suffix) and scanned by due date for the overdue check; the due
+        // date index includes animal_id so that scan never touches the table.
+        // animals.owner_id and animals.box_id back the owner/box joins and the
+        // "detach animals" updates run when an owner or a box is deleted.
+        migrations.add(new Migration(2, "Index foreign keys and filter columns",
+                "CREATE INDEX IF NOT EXISTS idx_treatments_animal_id ON treatments (animal_id)",
+                "CREATE INDEX IF NOT EXISTS idx_treatments_next_due_date ON treatments (next_due_date, animal_id)",
+                "CREATE INDEX IF NOT EXISTS idx_animals_owner_id ON animals (owner_id)",
+                "CREATE INDEX IF NOT EXISTS idx_animals_box_id ON animals (box_id)",
+                "CREATE INDEX IF NOT EXISTS idx_boxes_status ON boxes (status)"));
+
+        // Search indexes over the text columns. They are external content tables
+        // (the text stays in the base tables only), kept in sync by triggers;
+        // "rebuild" indexes the rows that existed before.
+        List<String> search = new ArrayList<>();
+        search.addAll(fullTextIndex("owners", "first_name", "last_name", "email", "phone", "address"));
+        search.addAll(fullTextIndex("animals", "name", "species", "breed"));
+        search.addAll(fullTextIndex("treatments", "name", "description"));
+        migrations.add(new Migration(3, "Add full-text search indexes", search.toArray(new String[0])));
+
+        return migrations;
+    }
+
+    /**
+     * The statements creating the FTS5 index {@code <table>_fts} over some
+     * columns of a table, with the triggers that keep it in sync
+     */
+    private static List<String> fullTextIndex(String table, String... columns) {
+        String index = table + "_fts";
+        String columnList = String.join(", ", columns);
+        String newValues = "new.id, new." + String.join(", new.", columns);
+        String oldValues = "old.id, old." + String.join(", old.", columns);
+        String insert = "INSERT INTO " + index + " (rowid, " + columnList + ") VALUES (" + newValues + ");";
+        String delete = "INSERT INTO " + index + " (" + index + ", rowid, " + columnList + ") " +
+                "VALUES ('delete', " + oldValues + ");";
+
+        List<String> statements = new ArrayList<>();
+        // remove_diacritics lets "elodie" find "Élodie"
+        statements.add("CREATE VIRTUAL TABLE IF NOT EXISTS " + index + " USING fts5(" + columnList + ", " +
+                "content='" + table + "', content_rowid='id', tokenize='unicode61 remove_diacritics 2')");
+        statements.add("CREATE TRIGGER IF NOT EXISTS " + index + "_insert AFTER INSERT ON " + table +
+                " BEGIN " + insert + " END");
+        statements.add("CREATE TRIGGER IF NOT EXISTS " + index + "_delete AFTER DELETE ON " + table +
+                " BEGIN " + delete + " END");
+        // Only changes to indexed columns touch the index, not box or owner moves
+        statements.add("CREATE TRIGGER IF NOT EXISTS " + index + "_update AFTER UPDATE OF " + columnList +
+                " ON " + table + " BEGIN " + delete + " " + insert + " END");
+        statements.add("INSERT INTO " + index + " (" + index + ") VALUES ('rebuild')");
+        return statements;
+    }
+}
@@ -0,0 +1,11 @@
+package com.mis.db;
+
+import java.sql.SQLException;
+
+/**
+ * A DAO or controller call to run on the {@link DatabaseExecutor}
+ */
+@FunctionalInterface
+public interface SqlCall<T> {
+    T call() throws SQLException;
+}
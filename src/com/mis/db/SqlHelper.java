@@ -0,0 +1,237 @@
+package com.mis.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Small helpers shared by the DAOs to build SQL statements
+ */
+final class SqlHelper {
+    /**
+     * Maximum number of bind parameters used in a single IN list, kept well below
+     * the SQLite host parameter limit
+     */
+    static final int MAX_IN_LIST_SIZE = 500;
+
+    /**
+     * Number of rows sent to the driver per executeBatch call
+     */
+    static final int BATCH_SIZE = 1000;
+
+    private SqlHelper() {
+    }
+
+    /**
+     * Build a placeholder list such as "?, ?, ?" for an IN clause
+     */
+    static String placeholders(int count) {
+        StringBuilder builder = new StringBuilder(count * 3);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append('?');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Split a collection of IDs into chunks that fit in a single IN list
+     */
+    static List<List<Integer>> partition(Collection<Integer> ids) {
+        List<List<Integer>> chunks = new ArrayList<>();
+        List<Integer> current = new ArrayList<>(Math.min(ids.size(), MAX_IN_LIST_SIZE));
+
+        for (Integer id : ids) {
+            current.add(id);
+            if (current.size() == MAX_IN_LIST_SIZE) {
+                chunks.add(current);
+                current = new ArrayList<>(MAX_IN_LIST_SIZE);
+            }
+        }
+
+        if (!current.isEmpty()) {
+            chunks.add(current);
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Bind a chunk of IDs to consecutive parameters starting at the given index
+     */
+    static void bindIds(PreparedStatement stmt, int firstIndex, List<Integer> ids) throws SQLException {
+        for (int i = 0; i < ids.size(); i++) {
+            stmt.setInt(firstIndex + i, ids.get(i));
+        }
+    }
+
+    /**
+     * Run a query returning IDs in its first column and collect them in order.
+     * An int array takes a fraction of the memory of a list of Integers, which
+     * matters for the ID list of a whole table.
+     */
+    static int[] readIds(PreparedStatement stmt) throws SQLException {
+        int[] ids = new int[256];
+        int size = 0;
+
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                }
+                ids[size++] = rs.getInt(1);
+            }
+        }
+
+        return Arrays.copyOf(ids, size);
+    }
+
+    /**
+     * Insert items with JDBC batches and hand each generated ID back to its item.
+     * <p>
+     * Must run inside a transaction: the write lock is then held for the whole
+     * batch, so the AUTOINCREMENT keys of one batch are consecutive and end at
+     * last_insert_rowid(). (The driver only reports the key of the last row of a
+     * batch.)
+     *
+     * @return the number of rows inserted
+     */
+    static <T> int insertBatch(Connection connection, String sql, Collection<T> items,
+                               Binder<T> binder, ObjIntConsumer<T> idSetter) throws SQLException {
+        if (connection.getAutoCommit()) {
+            throw new SQLException("Batch inserts must run inside a transaction.");
+        }
+
+        int inserted = 0;
+        List<T> batch = new ArrayList<>(Math.min(items.size(), BATCH_SIZE));
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            for (T item : items) {
+                binder.bind(stmt, item);
+                stmt.addBatch();
+                batch.add(item);
+
+                if (batch.size() == BATCH_SIZE) {
+                    inserted += flushBatch(connection, stmt, batch, idSetter);
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                inserted += flushBatch(connection, stmt, batch, idSetter);
+            }
+        }
+
+        return inserted;
+    }
+
+    private static <T> int flushBatch(Connection connection, PreparedStatement stmt, List<T> batch,
+                                      ObjIntConsumer<T> idSetter) throws SQLException {
+        int[] counts = stmt.executeBatch();
+        for (int count : counts) {
+            if (count == 0) {
+                throw new SQLException("Batch insert failed, no rows affected.");
+            }
+        }
+
+        int lastId = lastInsertRowId(connection);
+        int firstId = lastId - batch.size() + 1;
+        for (int i = 0; i < batch.size(); i++) {
+            idSetter.accept(batch.get(i), firstId + i);
+        }
+
+        int flushed = batch.size();
+        batch.clear();
+        return flushed;
+    }
+
+    private static int lastInsertRowId(Connection connection) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT last_insert_rowid()");
+             ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+                return rs.getInt(1);
+            }
+            throw new SQLException("Batch insert failed, no ID obtained.");
+        }
+    }
+
+    /**
+     * Build a keyset (seek) pagination query over the primary key of a table.
+     * Parameters: the key to start after, then the number of rows to fetch.
+     */
+    static String keysetQuery(String table, Page.Sort sort) {
+        return sort == Page.Sort.DESCENDING
+                ? "SELECT * FROM " + table + " WHERE id < ? ORDER BY id DESC LIMIT ?"
+                : "SELECT * FROM " + table + " WHERE id > ? ORDER BY id ASC LIMIT ?";
+    }
+
+    /**
+     * Bind the parameters of a {@link #keysetQuery}. One extra row is requested
+     * to find out whether another page follows.
+     */
+    static void bindKeyset(PreparedStatement stmt, Integer afterId, int limit, Page.Sort sort) throws SQLException {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page limit must be at least 1");
+        }
+
+        if (afterId != null) {
+            stmt.setInt(1, afterId);
+        } else {
+            // Same SQL for the first page keeps the statement cacheable
+            stmt.setInt(1, sort == Page.Sort.DESCENDING ? Integer.MAX_VALUE : Integer.MIN_VALUE);
+        }
+        stmt.setInt(2, limit + 1);
+    }
+
+    /**
+     * Turn the rows of a keyset query (up to limit + 1) into a page
+     */
+    static <T> Page<T> toPage(List<T> rows, int limit, ToIntFunction<T> idOf) {
+        if (rows.size() <= limit) {
+            return new Page<>(rows, null);
+        }
+
+        List<T> items = new ArrayList<>(rows.subList(0, limit));
+        return new Page<>(items, idOf.applyAsInt(items.get(limit - 1)));
+    }
+
+    /**
+     * Turn search text typed by a user into an FTS5 query matching rows that
+     * contain a word starting with each of its words. Words are quoted, so
+     * the input is never parsed as FTS5 syntax.
+     *
+     * @return the query, or null when the text has no words
+     */
+    static String fullTextQuery(String text) {
+        if (text == null) {
+            return null;
+        }
+
+        StringBuilder query = new StringBuilder();
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                if (query.length() > 0) {
+                    query.append(' ');
+                }
+                query.append('"').append(word).append("\"*");
+            }
+        }
+        return query.length() > 0 ? query.toString() : null;
+    }
+
+    /**
+     * Binds the parameters of one item to an insert statement
+     */
+    @FunctionalInterface
+    interface Binder<T> {
+        void bind(PreparedStatement stmt, T item) throws SQLException;
+    }
+}
@@ -0,0 +1,12 @@
+package com.mis.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Database work run on a borrowed connection
+ */
+@FunctionalInterface
+public interface SqlWork<T> {
+    T execute(Connection connection) throws SQLException;
+}
@@ -0,0 +1,209 @@
+package com.mis.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bounded LRU cache of prepared statements for one physical connection, keyed
+ * by SQL text.
+ * <p>
+ * A cached statement is checked out while a caller uses it and goes back to the
+ * cache when the caller closes it, so the same SQL is parsed and planned only
+ * once per connection. If the same SQL is requested again while its statement
+ * is checked out (nested use), a second statement is prepared and the spare
+ * one is closed when it comes back.
+ */
+class StatementCache {
+    private final Connection connection;
+    private final int capacity;
+    private final Map<Key, PreparedStatement> statements;
+
+    private long hitCount;
+    private long missCount;
+
+    StatementCache(Connection connection, int capacity) {
+        this.connection = connection;
+        this.capacity = capacity;
+        this.statements = new LinkedHashMap<Key, PreparedStatement>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+                if (size() > StatementCache.this.capacity) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get a prepared statement for the given SQL, reusing a cached one when
+     * possible. Closing the returned statement gives it back to the cache.
+     */
+    PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        Key key = new Key(sql, autoGeneratedKeys);
+        PreparedStatement stmt;
+
+        synchronized (this) {
+            stmt = capacity > 0 ? statements.remove(key) : null;
+            if (stmt != null) {
+                hitCount++;
+            } else {
+                missCount++;
+            }
+        }
+
+        if (stmt == null) {
+            stmt = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS
+                    ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                    : connection.prepareStatement(sql);
+        }
+
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class },
+                new CachedStatementHandler(key, stmt));
+    }
+
+    synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    synchronized long getMissCount() {
+        return missCount;
+    }
+
+    synchronized int size() {
+        return statements.size();
+    }
+
+    /**
+     * Close every cached statement
+     */
+    void close() {
+        List<PreparedStatement> cached;
+        synchronized (this) {
+            cached = new ArrayList<>(statements.values());
+            statements.clear();
+        }
+        for (PreparedStatement stmt : cached) {
+            closeQuietly(stmt);
+        }
+    }
+
+    private void giveBack(Key key, PreparedStatement stmt) {
+        try {
+            stmt.clearParameters();
+        } catch (SQLException e) {
+            closeQuietly(stmt);
+            return;
+        }
+
+        PreparedStatement spare;
+        synchronized (this) {
+            spare = capacity > 0 ? statements.putIfAbsent(key, stmt) : stmt;
+        }
+
+        if (spare != null) {
+            // Another statement with the same SQL is already cached
+            closeQuietly(stmt);
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Cache key: SQL text plus the generated keys flag it was prepared with
+     */
+    private static final class Key {
+        private final String sql;
+        private final int autoGeneratedKeys;
+
+        Key(String sql, int autoGeneratedKeys) {
+            this.sql = sql;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return autoGeneratedKeys == other.autoGeneratedKeys && sql.equals(other.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sql, autoGeneratedKeys);
+        }
+    }
+
+    /**
+     * Statement handle given to callers; close() returns the statement to the cache
+     */
+    private class CachedStatementHandler implements InvocationHandler {
+        private final Key key;
+        private final PreparedStatement stmt;
+        private boolean closed;
+
+        CachedStatementHandler(Key key, PreparedStatement stmt) {
+            this.key = key;
+            this.stmt = stmt;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        giveBack(key, stmt);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || stmt.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + key.sql + "]";
+                default:
+                    break;
+            }
+
+            if (closed) {
+                throw new SQLException("Statement is already closed.");
+            }
+
+            try {
+                return method.invoke(stmt, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
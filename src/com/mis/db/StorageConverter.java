@@ -0,0 +1,133 @@
+package com.mis.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import com.mis.model.BoxStatus;
+import com.mis.model.TreatmentType;
+
+/**
+ * Rewrites the boxes, animals and treatments tables from one
+ * {@link StorageFormat} to another.
+ * <p>
+ * SQLite cannot change the type of a column, so each table is copied into a
+ * new one with the target column types, converting the values in SQL, and
+ * then replaces the old one. The whole conversion is one transaction. The
+ * statements of every migration are then run again to recreate the indexes
+ * (and anything else dropped with the old tables), which is safe because
+ * migration statements are idempotent.
+ */
+final class StorageConverter {
+    private final List<Migration> migrations;
+
+    StorageConverter(List<Migration> migrations) {
+        this.migrations = migrations;
+    }
+
+    /**
+     * Find out how the existing tables store their values, from the declared
+     * type of treatments.next_due_date
+     *
+     * @return the format, or null when the tables do not exist yet
+     */
+    static StorageFormat detect(Connection connection) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("PRAGMA table_info(treatments)");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                if ("next_due_date".equals(rs.getString("name"))) {
+                    return "INTEGER".equalsIgnoreCase(rs.getString("type")) ? StorageFormat.COMPACT : StorageFormat.TEXT;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Convert the tables and reclaim the space freed by the old ones
+     */
+    void convert(Connection connection, StorageFormat from, StorageFormat to) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+
+        try (Statement stmt = connection.createStatement()) {
+            rebuild(stmt, "boxes",
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "name TEXT NOT NULL," +
+                    "location TEXT," +
+                    "status " + to.codeType() + " NOT NULL",
+                    "id, name, location, status",
+                    "id, name, location, " + from.convertCode("status", BoxStatus.class, to));
+            rebuild(stmt, "animals",
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "name TEXT NOT NULL," +
+                    "species TEXT NOT NULL," +
+                    "breed TEXT," +
+                    "birth_date " + to.dateType() + "," +
+                    "gender TEXT," +
+                    "owner_id INTEGER," +
+                    "box_id INTEGER," +
+                    "FOREIGN KEY (owner_id) REFERENCES owners(id)," +
+                    "FOREIGN KEY (box_id) REFERENCES boxes(id)",
+                    "id, name, species, breed, birth_date, gender, owner_id, box_id",
+                    "id, name, species, breed, " + from.convertDate("birth_date", to) + ", gender, owner_id, box_id");
+            rebuild(stmt, "treatments",
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "animal_id INTEGER NOT NULL," +
+                    "type " + to.codeType() + " NOT NULL," +
+                    "name TEXT NOT NULL," +
+                    "description TEXT," +
+                    "administration_date " + to.dateType() + "," +
+                    "next_due_date " + to.dateType() + "," +
+                    "administered BOOLEAN DEFAULT 0," +
+                    "FOREIGN KEY (animal_id) REFERENCES animals(id)",
+                    "id, animal_id, type, name, description, administration_date, next_due_date, administered",
+                    "id, animal_id, " + from.convertCode("type", TreatmentType.class, to) + ", name, description, " +
+                    from.convertDate("administration_date", to) + ", " + from.convertDate("next_due_date", to) +
+                    ", administered");
+
+            for (Migration migration : migrations) {
+                for (String sql : migration.getStatements()) {
+                    stmt.execute(sql);
+                }
+            }
+
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException("Conversion to the " + to + " storage format failed: " + e.getMessage(), e);
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        // The old tables leave free pages behind; VACUUM cannot run in a transaction
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("VACUUM");
+        }
+    }
+
+    private void rebuild(Statement stmt, String table, String columnDefinitions, String columns,
+                         String values) throws SQLException {
+        // Dropping the table drops its sqlite_sequence row, so IDs of deleted rows
+        // would be handed out again without this
+        long sequence = 0;
+        try (ResultSet rs = stmt.executeQuery("SELECT seq FROM sqlite_sequence WHERE name = '" + table + "'")) {
+            if (rs.next()) {
+                sequence = rs.getLong(1);
+            }
+        }
+
+        String newTable = table + "_converted";
+        stmt.execute("CREATE TABLE " + newTable + " (" + columnDefinitions + ")");
+        stmt.execute("INSERT INTO " + newTable + " (" + columns + ") SELECT " + values + " FROM " + table);
+        stmt.execute("DROP TABLE " + table);
+        stmt.execute("ALTER TABLE " + newTable + " RENAME TO " + table);
+        if (stmt.executeUpdate("UPDATE sqlite_sequence SET seq = MAX(seq, " + sequence + ") WHERE name = '" + table + "'") == 0
+                && sequence > 0) {
+            stmt.execute("INSERT INTO sqlite_sequence (name, seq) VALUES ('" + table + "', " + sequence + ")");
+        }
+    }
+}
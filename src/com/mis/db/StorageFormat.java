@@ -0,0 +1,202 @@
+package com.mis.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+import com.mis.model.BoxStatus;
+import com.mis.model.TreatmentType;
+
+/**
+ * How dates and enums are stored in the database.
+ * <ul>
+ * <li>{@link #TEXT}: ISO-8601 strings ("2024-05-01") and enum names ("VACCINE"),
+ * readable with any SQLite tool</li>
+ * <li>{@link #COMPACT}: INTEGER days since 1970-01-01 and small integer codes,
+ * which take less space and compare and map faster</li>
+ * </ul>
+ * The DAOs bind and read these columns through the format of the database
+ * (see {@link #current()}), so queries stay the same apart from the few
+ * predicates built by {@link #dateBefore(String)}.
+ */
+public enum StorageFormat {
+    TEXT("text"),
+    COMPACT("compact");
+
+    // A code is the index in these arrays: only ever append, so that stored
+    // codes keep their meaning
+    private static final BoxStatus[] BOX_STATUS_CODES = {
+            BoxStatus.AVAILABLE, BoxStatus.OCCUPIED, BoxStatus.MAINTENANCE, BoxStatus.CLEANING
+    };
+    private static final TreatmentType[] TREATMENT_TYPE_CODES = {
+            TreatmentType.VACCINE, TreatmentType.DEWORMING, TreatmentType.MEDICATION, TreatmentType.CHECKUP
+    };
+
+    private final String name;
+
+    StorageFormat(String name) {
+        this.name = name;
+    }
+
+    /**
+     * The format of the application database
+     */
+    public static StorageFormat current() {
+        return DatabaseConnection.getInstance().getStorageFormat();
+    }
+
+    /**
+     * The value to bind for a date, or null
+     */
+    public Object date(LocalDate date) {
+        if (date == null) {
+            return null;
+        }
+        return this == COMPACT ? (Object) date.toEpochDay() : date.toString();
+    }
+
+    /**
+     * Read a date column; NULL (and '' in the text format) is no date
+     */
+    public LocalDate getDate(ResultSet rs, String column) throws SQLException {
+        if (this == COMPACT) {
+            long epochDay = rs.getLong(column);
+            return rs.wasNull() ? null : LocalDate.ofEpochDay(epochDay);
+        }
+        String value = rs.getString(column);
+        return value != null && !value.isEmpty() ? LocalDate.parse(value) : null;
+    }
+
+    /**
+     * The value to bind for a box status or treatment type
+     */
+    public Object code(Enum<?> value) {
+        if (value == null) {
+            return null;
+        }
+        return this == COMPACT ? (Object) indexOf(codesOf(value.getDeclaringClass()), value) : value.name();
+    }
+
+    /**
+     * Read a box status or treatment type column
+     */
+    public <E extends Enum<E>> E getEnum(ResultSet rs, String column, Class<E> type) throws SQLException {
+        if (this == COMPACT) {
+            int code = rs.getInt(column);
+            if (rs.wasNull()) {
+                return null;
+            }
+            Enum<?>[] codes = codesOf(type);
+            if (code < 0 || code >= codes.length) {
+                throw new SQLException("Unknown " + type.getSimpleName() + " code " + code + " in column " + column);
+            }
+            return type.cast(codes[code]);
+        }
+        String value = rs.getString(column);
+        return value != null ? Enum.valueOf(type, value) : null;
+    }
+
+    /**
+     * A predicate on a date column that takes one parameter, the bound
+     * {@link #date(LocalDate)}, and holds when the column has a date before it.
+     * It is a plain range on the column, so an index on the column is used.
+     */
+    public String dateBefore(String column) {
+        // '' sorts before every date string and used to mean "no date"
+        return this == COMPACT ? column + " < ?" : column + " > '' AND " + column + " < ?";
+    }
+
+    /**
+     * The declared SQL type of date columns
+     */
+    String dateType() {
+        return this == COMPACT ? "INTEGER" : "TEXT";
+    }
+
+    /**
+     * The declared SQL type of enum columns
+     */
+    String codeType() {
+        return this == COMPACT ? "INTEGER" : "TEXT";
+    }
+
+    /**
+     * SQL expression converting a date column stored in this format to another one
+     */
+    String convertDate(String column, StorageFormat target) {
+        if (this == target) {
+            return column;
+        }
+        // 2440587.5 is the Julian day of 1970-01-01 at midnight
+        return target == COMPACT
+                ? "CAST(julianday(NULLIF(" + column + ", '')) - 2440587.5 AS INTEGER)"
+                : "date(" + column + " + 2440587.5)";
+    }
+
+    /**
+     * SQL expression converting an enum column stored in this format to another one
+     */
+    String convertCode(String column, Class<? extends Enum<?>> type, StorageFormat target) {
+        if (this == target) {
+            return column;
+        }
+        StringBuilder expression = new StringBuilder("CASE ").append(column);
+        Enum<?>[] codes = codesOf(type);
+        for (int i = 0; i < codes.length; i++) {
+            Object from = i;
+            Object to = "'" + codes[i].name() + "'";
+            if (target == COMPACT) {
+                from = to;
+                to = i;
+            }
+            expression.append(" WHEN ").append(from).append(" THEN ").append(to);
+        }
+        return expression.append(" END").toString();
+    }
+
+    private static Enum<?>[] codesOf(Class<?> type) {
+        if (type == BoxStatus.class) {
+            return BOX_STATUS_CODES;
+        }
+        if (type == TreatmentType.class) {
+            return TREATMENT_TYPE_CODES;
+        }
+        throw new IllegalArgumentException("No storage codes for " + type.getName());
+    }
+
+    private static int indexOf(Enum<?>[] codes, Enum<?> value) {
+        for (int i = 0; i < codes.length; i++) {
+            if (codes[i] == value) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No storage code for " + value);
+    }
+
+    /**
+     * Name used in configuration files, e.g. "compact"
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Look up a format by its configuration name (case-insensitive)
+     */
+    public static StorageFormat fromName(String value) {
+        if (value != null) {
+            String trimmed = value.trim();
+            for (StorageFormat format : values()) {
+                if (format.name.equalsIgnoreCase(trimmed)) {
+                    return format;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unknown storage format: " + value);
+    }
+}
@@ -7,47 +7,56 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import com.mis.model.DirtyTracker;
+import com.mis.model.OverdueTreatment;
 import com.mis.model.Treatment;
+import com.mis.model.TreatmentRow;
 import com.mis.model.TreatmentType;
 
 /**
  * Data Access Object for Treatment entities
  */
 public class TreatmentDAO {
-    private Connection connection;
+    private static final String INSERT_QUERY = "INSERT INTO treatments (animal_id, type, name, description, " +
+                                               "administration_date, next_due_date, administered) VALUES (?, ?, ?, ?, ?, ?, ?)";
     
-    public TreatmentDAO() {
-        this.connection = DatabaseConnection.getInstance().getConnection();
-    }
+    private static final String ROW_QUERY = "SELECT t.id, t.animal_id, a.name AS animal_name, t.type, t.name, t.description, " +
+                                            "t.administration_date, t.next_due_date, t.administered " +
+                                            "FROM treatments t JOIN animals a ON a.id = t.animal_id ";
+    
+    private static final String DUE_QUERY = "SELECT t.id, t.type, t.name, t.next_due_date, a.id AS animal_id, " +
+                                            "a.name AS animal_name, a.species AS animal_species " +
+                                            "FROM treatments t JOIN animals a ON a.id = t.animal_id ";
     
     /**
      * Save a new treatment to the database
      */
     public int save(int animalId, Treatment treatment) throws SQLException {
-        String query = "INSERT INTO treatments (animal_id, type, name, description, " +
-                      "administration_date, next_due_date, administered) VALUES (?, ?, ?, ?, ?, ?, ?)";
-        
-        try (PreparedStatement stmt = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setInt(1, animalId);
-            stmt.setString(2, treatment.getType().toString());
-            stmt.setString(3, treatment.getName());
-            stmt.setString(4, treatment.getDescription());
-            stmt.setString(5, treatment.getAdministrationDate() != null ? treatment.getAdministrationDate().toString() : null);
-            stmt.setString(6, treatment.getNextDueDate() != null ? treatment.getNextDueDate().toString() : null);
-            stmt.setBoolean(7, treatment.isAdministered());
+        try (Connection connection = DatabaseConnection.getInstance().getConnection();
+             PreparedStatement stmt = connection.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS)) {
+            bindInsert(stmt, animalId, treatment);
             
             int affectedRows = stmt.executeUpdate();
             
             if (affectedRows == 0) {
                 throw new SQLException("Creating treatment failed, no rows affected.");
             }
+            AnimalDAO.getCache().invalidate(animalId);
             
             try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
                 if (generatedKeys.next()) {
                     int treatmentId = generatedKeys.getInt(1);
                     treatment.setId(treatmentId);
+                    EntityEvents.inserted(Treatment.class, treatmentId);
                     return treatmentId;
                 } else {
                     throw new SQLException("Creating treatment failed, no ID obtained.");
@@ -56,13 +65,52 @@ public class TreatmentDAO {
         }
     }
     
+    /**
+     * Save many new treatments of one animal in a single transaction using JDBC
+     * batches. The generated IDs are set on the treatments.
+     *
+     * @return the number of treatments saved
+     */
+    public int saveAll(int animalId, Collection<Treatment> treatments) throws SQLException {
+        Map<Treatment, Integer> animalIds = new IdentityHashMap<>();
+        for (Treatment treatment : treatments) {
+            animalIds.put(treatment, animalId);
+        }
+        return saveAll(new ArrayList<>(treatments), animalIds);
+    }
+    
+    /**
+     * Save treatments belonging to different animals in a single transaction
+     * using JDBC batches
+     *
+     * @param animalIds the animal ID of each treatment
+     */
+    int saveAll(List<Treatment> treatments, Map<Treatment, Integer> animalIds) throws SQLException {
+        if (treatments.isEmpty()) {
+            return 0;
+        }
+        
+        int saved = DatabaseConnection.getInstance().inTransaction(connection ->
+                SqlHelper.insertBatch(connection, INSERT_QUERY, treatments,
+                        (stmt, treatment) -> bindInsert(stmt, animalIds.get(treatment), treatment),
+                        Treatment::setId));
+        
+        for (Integer animalId : new HashSet<>(animalIds.values())) {
+            AnimalDAO.getCache().invalidate(animalId);
+        }
+        EntityEvents.insertedAll(Treatment.class, treatments.stream().mapToInt(Treatment::getId).toArray());
+        
+        return saved;
+    }
+    
     /**
      * Get a treatment by ID
      */
     public Treatment getById(int id) throws SQLException {
         String query = "SELECT * FROM treatments WHERE id = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
             stmt.setInt(1, id);
             
             try (ResultSet rs = stmt.executeQuery()) {
@@ -82,7 +130,8 @@ public class TreatmentDAO {
         String query = "SELECT * FROM treatments WHERE animal_id = ?";
         List<Treatment> treatments = new ArrayList<>();
         
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
             stmt.setInt(1, animalId);
             
             try (ResultSet rs = stmt.executeQuery()) {
@@ -95,23 +144,310 @@ public class TreatmentDAO {
         return treatments;
     }
     
+    /**
+     * Get one page of treatments of all animals using keyset pagination on the primary key
+     *
+     * @param afterId continuation token from the previous page, or null for the first page
+     */
+    public Page<Treatment> page(Integer afterId, int limit, Page.Sort sort) throws SQLException {
+        List<Treatment> rows = new ArrayList<>();
+        
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(SqlHelper.keysetQuery("treatments", sort))) {
+            SqlHelper.bindKeyset(stmt, afterId, limit, sort);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(mapResultSetToTreatment(rs));
+                }
+            }
+        }
+        
+        return SqlHelper.toPage(rows, limit, Treatment::getId);
+    }
+    
+    /**
+     * Stream the treatments of an animal straight from a live ResultSet. The
+     * stream holds a pooled connection until it is exhausted or closed, so use
+     * it in a try-with-resources block.
+     */
+    public Stream<Treatment> streamByAnimalId(int animalId, int fetchSize) throws SQLException {
+        return Cursor.open("SELECT * FROM treatments WHERE animal_id = ?", fetchSize,
+                stmt -> stmt.setInt(1, animalId)).stream(this::mapResultSetToTreatment);
+    }
+    
+    /**
+     * Process every treatment of an animal in constant memory; the cursor is
+     * always closed
+     */
+    public void forEachByAnimalId(int animalId, Consumer<? super Treatment> action) throws SQLException {
+        Cursor.forEach(streamByAnimalId(animalId, Cursor.DEFAULT_FETCH_SIZE), action);
+    }
+    
+    /**
+     * Get all treatments for a set of animals, grouped by animal ID
+     */
+    public Map<Integer, List<Treatment>> getAllByAnimalIds(Collection<Integer> animalIds) throws SQLException {
+        Map<Integer, List<Treatment>> treatments = new HashMap<>();
+        
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection()) {
+            for (List<Integer> chunk : SqlHelper.partition(animalIds)) {
+                String query = "SELECT * FROM treatments WHERE animal_id IN (" + SqlHelper.placeholders(chunk.size()) + ") " +
+                              "ORDER BY animal_id, id";
+                
+                try (PreparedStatement stmt = connection.prepareStatement(query)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        stmt.setInt(i + 1, chunk.get(i));
+                    }
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            int animalId = rs.getInt("animal_id");
+                            treatments.computeIfAbsent(animalId, k -> new ArrayList<>())
+                                      .add(mapResultSetToTreatment(rs));
+                        }
+                    }
+                }
+            }
+        }
+        
+        return treatments;
+    }
+    
+    /**
+     * Get the treatments that were due before the given day, with the name and
+     * species of their animal, ordered by animal and due date. The due date
+     * range is read from idx_treatments_next_due_date, so this only touches the
+     * overdue rows.
+     */
+    public List<OverdueTreatment> getOverdue(LocalDate today) throws SQLException {
+        // Both storage formats keep date order, so this is a range on the index
+        StorageFormat storage = StorageFormat.current();
+        String query = DUE_QUERY +
+                      "WHERE " + storage.dateBefore("t.next_due_date") + " " +
+                      "ORDER BY t.animal_id, t.next_due_date";
+        
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
+            stmt.setObject(1, storage.date(today));
+            return readDue(stmt, storage);
+        }
+    }
+    
+    /**
+     * Get every treatment that has a next due date, with the name and species
+     * of its animal, in no particular order
+     */
+    public List<OverdueTreatment> getScheduled() throws SQLException {
+        StorageFormat storage = StorageFormat.current();
+        String query = DUE_QUERY + "WHERE t.next_due_date IS NOT NULL";
+        
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
+            return readDue(stmt, storage);
+        }
+    }
+    
+    /**
+     * Get a treatment with the name and species of its animal, or null if it
+     * does not exist or has no next due date
+     */
+    public OverdueTreatment getScheduledById(int id) throws SQLException {
+        StorageFormat storage = StorageFormat.current();
+        String query = DUE_QUERY + "WHERE t.id = ?";
+        
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
+            stmt.setInt(1, id);
+            List<OverdueTreatment> treatments = readDue(stmt, storage);
+            return treatments.isEmpty() ? null : treatments.get(0);
+        }
+    }
+    
+    /**
+     * Read the rows of a DUE_QUERY, skipping treatments without a next due date
+     */
+    private List<OverdueTreatment> readDue(PreparedStatement stmt, StorageFormat storage) throws SQLException {
+        List<OverdueTreatment> treatments = new ArrayList<>();
+        
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                LocalDate nextDueDate = storage.getDate(rs, "next_due_date");
+                if (nextDueDate != null) {
+                    treatments.add(new OverdueTreatment(
+                            rs.getInt("id"),
+                            storage.getEnum(rs, "type", TreatmentType.class),
+                            rs.getString("name"),
+                            nextDueDate,
+                            rs.getInt("animal_id"),
+                            rs.getString("animal_name"),
+                            rs.getString("animal_species")));
+                }
+            }
+        }
+        
+        return treatments;
+    }
+    
+    /**
+     * Get one row per treatment for list views, with the name of its animal,
+     * ordered by animal like the per-animal lists
+     *
+     * @param animalId only return the treatments of this animal, or null for all
+     */
+    public List<TreatmentRow> getRows(Integer animalId) throws SQLException {
+        String query = ROW_QUERY +
+                      (animalId != null ? "WHERE t.animal_id = ? " : "") +
+                      "ORDER BY t.animal_id, t.id";
+        
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
+            if (animalId != null) {
+                stmt.setInt(1, animalId);
+            }
+            return readRows(stmt);
+        }
+    }
+    
+    /**
+     * Get the IDs of the treatments in the order of {@link #getRows(Integer)},
+     * so that a list view can count its rows and load only those it shows
+     *
+     * @param animalId only return the treatments of this animal, or null for all
+     */
+    public int[] getRowIds(Integer animalId) throws SQLException {
+        String query = "SELECT id FROM treatments " +
+                      (animalId != null ? "WHERE animal_id = ? " : "") +
+                      "ORDER BY animal_id, id";
+        
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
+            if (animalId != null) {
+                stmt.setInt(1, animalId);
+            }
+            return SqlHelper.readIds(stmt);
+        }
+    }
+    
+    /**
+     * Get the list view rows of the treatments with the given IDs, in no
+     * particular order; IDs of deleted treatments are skipped
+     */
+    public List<TreatmentRow> getRowsByIds(Collection<Integer> ids) throws SQLException {
+        List<TreatmentRow> rows = new ArrayList<>(ids.size());
+        
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection()) {
+            for (List<Integer> chunk : SqlHelper.partition(ids)) {
+                String query = ROW_QUERY + "WHERE t.id IN (" + SqlHelper.placeholders(chunk.size()) + ")";
+                
+                try (PreparedStatement stmt = connection.prepareStatement(query)) {
+                    SqlHelper.bindIds(stmt, 1, chunk);
+                    rows.addAll(readRows(stmt));
+                }
+            }
+        }
+        
+        return rows;
+    }
+    
+    /**
+     * Search treatments by name or description, best matches first. Every word
+     * of the text must be the start of a word of the treatment.
+     */
+    public List<TreatmentRow> search(String text, int limit) throws SQLException {
+        String match = SqlHelper.fullTextQuery(text);
+        if (match == null) {
+            return new ArrayList<>();
+        }
+        
+        String query = ROW_QUERY + "JOIN treatments_fts f ON f.rowid = t.id " +
+                      "WHERE f.treatments_fts MATCH ? ORDER BY f.rank LIMIT ?";
+        
+        try (Connection connection = DatabaseConnection.getInstance().getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
+            stmt.setString(1, match);
+            stmt.setInt(2, limit);
+            return readRows(stmt);
+        }
+    }
+    
+    private List<TreatmentRow> readRows(PreparedStatement stmt) throws SQLException {
+        StorageFormat storage = StorageFormat.current();
+        List<TreatmentRow> rows = new ArrayList<>();
+        
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                rows.add(new TreatmentRow(
+                        rs.getInt("id"),
+                        rs.getInt("animal_id"),
+                        rs.getString("animal_name"),
+                        storage.getEnum(rs, "type", TreatmentType.class),
+                        rs.getString("name"),
+                        rs.getString("description"),
+                        storage.getDate(rs, "administration_date"),
+                        storage.getDate(rs, "next_due_date"),
+                        rs.getBoolean("administered")));
+            }
+        }
+        
+        return rows;
+    }
+    
+    /**
+     * Record that a treatment was administered with a single UPDATE, without
+     * loading it
+     *
+     * @param nextDueDate when the treatment is due again, or null
+     */
+    public boolean markAdministered(int treatmentId, LocalDate administrationDate, LocalDate nextDueDate) throws SQLException {
+        String query = "UPDATE treatments SET administered = 1, administration_date = ?, next_due_date = ? WHERE id = ?";
+        
+        StorageFormat storage = StorageFormat.current();
+        
+        try (Connection connection = DatabaseConnection.getInstance().getConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
+            stmt.setObject(1, storage.date(administrationDate));
+            stmt.setObject(2, storage.date(nextDueDate));
+            stmt.setInt(3, treatmentId);
+            
+            boolean updated = stmt.executeUpdate() > 0;
+            AnimalDAO.getCache().clear();
+            if (updated) {
+                EntityEvents.updated(Treatment.class, treatmentId);
+            }
+            return updated;
+        }
+    }
+    
     /**
      * Update a treatment in the database
      */
     public boolean update(Treatment treatment) throws SQLException {
-        String query = "UPDATE treatments SET type = ?, name = ?, description = ?, " +
-                      "administration_date = ?, next_due_date = ?, administered = ? WHERE id = ?";
-        
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, treatment.getType().toString());
-            stmt.setString(2, treatment.getName());
-            stmt.setString(3, treatment.getDescription());
-            stmt.setString(4, treatment.getAdministrationDate() != null ? treatment.getAdministrationDate().toString() : null);
-            stmt.setString(5, treatment.getNextDueDate() != null ? treatment.getNextDueDate().toString() : null);
-            stmt.setBoolean(6, treatment.isAdministered());
-            stmt.setInt(7, treatment.getId());
-            
-            return stmt.executeUpdate() > 0;
+        DirtyTracker changes = treatment.getDirtyTracker();
+        StorageFormat storage = StorageFormat.current();
+        PartialUpdate update = new PartialUpdate("treatments")
+                .setIf(changes.isDirty("type"), "type", storage.code(treatment.getType()))
+                .setIf(changes.isDirty("name"), "name", treatment.getName())
+                .setIf(changes.isDirty("description"), "description", treatment.getDescription())
+                .setIf(changes.isDirty("administrationDate"), "administration_date",
+                        storage.date(treatment.getAdministrationDate()))
+                .setIf(changes.isDirty("nextDueDate"), "next_due_date", storage.date(treatment.getNextDueDate()))
+                .setIf(changes.isDirty("administered"), "administered", treatment.isAdministered());
+        
+        if (update.isEmpty()) {
+            // Nothing changed since the treatment was loaded
+            return true;
+        }
+        
+        try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+            boolean updated = update.execute(connection, treatment.getId()) > 0;
+            // The owning animal is not known here, so drop every cached animal
+            AnimalDAO.getCache().clear();
+            if (updated) {
+                changes.markClean();
+                EntityEvents.updated(Treatment.class, treatment.getId());
+            }
+            return updated;
         }
     }
     
@@ -121,10 +457,16 @@ public class TreatmentDAO {
     public boolean delete(int id) throws SQLException {
         String query = "DELETE FROM treatments WHERE id = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
+        try (Connection connection = DatabaseConnection.getInstance().getConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
             stmt.setInt(1, id);
             
-            return stmt.executeUpdate() > 0;
+            boolean deleted = stmt.executeUpdate() > 0;
+            AnimalDAO.getCache().clear();
+            if (deleted) {
+                EntityEvents.deleted(Treatment.class, id);
+            }
+            return deleted;
         }
     }
     
@@ -134,35 +476,54 @@ public class TreatmentDAO {
     public boolean deleteAllByAnimalId(int animalId) throws SQLException {
         String query = "DELETE FROM treatments WHERE animal_id = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
+        try (Connection connection = DatabaseConnection.getInstance().getConnection();
+             PreparedStatement idStmt = connection.prepareStatement("SELECT id FROM treatments WHERE animal_id = ?");
+             PreparedStatement stmt = connection.prepareStatement(query)) {
+            // The IDs are announced one by one, so that views drop only these rows
+            idStmt.setInt(1, animalId);
+            int[] ids = SqlHelper.readIds(idStmt);
+            
             stmt.setInt(1, animalId);
             
-            return stmt.executeUpdate() > 0;
+            boolean deleted = stmt.executeUpdate() > 0;
+            AnimalDAO.getCache().invalidate(animalId);
+            if (deleted) {
+                EntityEvents.deletedAll(Treatment.class, ids);
+            }
+            return deleted;
         }
     }
     
+    /**
+     * Bind the columns of a treatment to the parameters of INSERT_QUERY
+     */
+    private void bindInsert(PreparedStatement stmt, int animalId, Treatment treatment) throws SQLException {
+        StorageFormat storage = StorageFormat.current();
+        stmt.setInt(1, animalId);
+        stmt.setObject(2, storage.code(treatment.getType()));
+        stmt.setString(3, treatment.getName());
+        stmt.setString(4, treatment.getDescription());
+        stmt.setObject(5, storage.date(treatment.getAdministrationDate()));
+        stmt.setObject(6, storage.date(treatment.getNextDueDate()));
+        stmt.setBoolean(7, treatment.isAdministered());
+    }
+    
     /**
      * Map a ResultSet row to a Treatment object
      */
     private Treatment mapResultSetToTreatment(ResultSet rs) throws SQLException {
+        StorageFormat storage = StorageFormat.current();
         Treatment treatment = new Treatment();
         treatment.setId(rs.getInt("id"));
-        treatment.setType(TreatmentType.valueOf(rs.getString("type")));
+        treatment.setType(storage.getEnum(rs, "type", TreatmentType.class));
         treatment.setName(rs.getString("name"));
         treatment.setDescription(rs.getString("description"));
-        
-        String adminDateStr = rs.getString("administration_date");
-        if (adminDateStr != null && !adminDateStr.isEmpty()) {
-            treatment.setAdministrationDate(LocalDate.parse(adminDateStr));
-        }
-        
-        String nextDueDateStr = rs.getString("next_due_date");
-        if (nextDueDateStr != null && !nextDueDateStr.isEmpty()) {
-            treatment.setNextDueDate(LocalDate.parse(nextDueDateStr));
-        }
+        treatment.setAdministrationDate(storage.getDate(rs, "administration_date"));
+        treatment.setNextDueDate(storage.getDate(rs, "next_due_date"));
         
         treatment.setAdministered(rs.getBoolean("administered"));
         
+        treatment.getDirtyTracker().markClean();
         return treatment;
     }
 } 
\ No newline at end of file
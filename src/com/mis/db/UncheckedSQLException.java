@@ -0,0 +1,19 @@
+package com.mis.db;
+
+import java.sql.SQLException;
+
+/**
+ * Wraps a SQLException thrown while a stream returned by a DAO is being consumed
+ */
+public class UncheckedSQLException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public UncheckedSQLException(SQLException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+}
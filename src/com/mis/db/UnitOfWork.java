@@ -0,0 +1,155 @@
+package com.mis.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A database transaction bound to the current thread.
+ * <p>
+ * While a unit of work is open, every DAO call made on the thread uses its
+ * connection, so several DAO operations are committed together with a single
+ * commit (one fsync) and are atomic for other threads:
+ * <pre>
+ * try (UnitOfWork unit = UnitOfWork.begin()) {
+ *     boxDAO.update(oldBox);
+ *     boxDAO.update(newBox);
+ *     animalDAO.update(animal);
+ *     unit.commit();
+ * }
+ * </pre>
+ * Closing a unit that was not committed rolls it back. A unit begun while
+ * another one is open joins it: its commit is left to the outer unit, and
+ * closing it without committing makes the outer unit roll back.
+ */
+public final class UnitOfWork implements AutoCloseable {
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+    private final Connection connection;
+    private final UnitOfWork outer;
+    private final List<Runnable> afterCommit;
+    private boolean completed;
+    private boolean rollbackOnly;
+
+    private UnitOfWork(Connection connection, UnitOfWork outer) {
+        this.connection = connection;
+        this.outer = outer;
+        this.afterCommit = outer == null ? new ArrayList<>() : outer.afterCommit;
+    }
+
+    /**
+     * Start a unit of work on the writer connection, or join the one already
+     * open on the current thread
+     */
+    public static UnitOfWork begin() throws SQLException {
+        UnitOfWork current = CURRENT.get();
+        if (current != null) {
+            return new UnitOfWork(current.connection, current);
+        }
+
+        Connection connection = DatabaseConnection.getInstance().getConnection();
+        try {
+            connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+
+        UnitOfWork unit = new UnitOfWork(connection, null);
+        CURRENT.set(unit);
+        return unit;
+    }
+
+    /**
+     * The unit of work open on the current thread, or null
+     */
+    static UnitOfWork current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Run an action once the current unit of work has committed, or right away
+     * when no unit is open. Actions of a unit that rolls back are dropped.
+     */
+    static void afterCommit(Runnable action) {
+        UnitOfWork current = CURRENT.get();
+        if (current != null) {
+            current.afterCommit.add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * The connection of this unit of work
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Commit the unit of work. For a unit that joined an outer one, this only
+     * marks it as done and the outer unit commits.
+     */
+    public void commit() throws SQLException {
+        if (completed) {
+            throw new SQLException("Unit of work already completed.");
+        }
+        if (outer != null) {
+            completed = true;
+            return;
+        }
+        if (rollbackOnly) {
+            throw new SQLException("Unit of work was rolled back by a nested unit.");
+        }
+
+        connection.commit();
+        completed = true;
+        end();
+
+        for (Runnable action : afterCommit) {
+            action.run();
+        }
+    }
+
+    /**
+     * Roll back the unit of work, or the outer unit it joined
+     */
+    public void rollback() throws SQLException {
+        if (completed) {
+            return;
+        }
+        completed = true;
+
+        if (outer != null) {
+            outer.rollbackOnly = true;
+            return;
+        }
+
+        try {
+            connection.rollback();
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Roll back unless the unit was committed
+     */
+    @Override
+    public void close() throws SQLException {
+        if (!completed) {
+            rollback();
+        }
+    }
+
+    private void end() throws SQLException {
+        CURRENT.remove();
+        try {
+            connection.setAutoCommit(true);
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -17,6 +17,7 @@ public class Animal {
     private Box box;
     private Owner owner;
     private List<Treatment> treatments;
+    private DirtyTracker dirtyTracker = new DirtyTracker();
     
     public Animal() {
         this.treatments = new ArrayList<>();
@@ -32,6 +33,14 @@ public class Animal {
         this.gender = gender;
     }
     
+    /**
+     * Copy the fields of another animal, without its box, owner and treatments
+     */
+    public Animal(Animal other) {
+        this(other.id, other.name, other.species, other.breed, other.birthDate, other.gender);
+        this.dirtyTracker = new DirtyTracker(other.dirtyTracker);
+    }
+    
     public boolean isVaccinationUpToDate() {
         for (Treatment treatment : treatments) {
             if (treatment.getType() == TreatmentType.VACCINE && 
@@ -76,6 +85,7 @@ public class Animal {
     }
     
     public void setName(String name) {
+        dirtyTracker.changed("name", this.name, name);
         this.name = name;
     }
     
@@ -84,6 +94,7 @@ public class Animal {
     }
     
     public void setSpecies(String species) {
+        dirtyTracker.changed("species", this.species, species);
         this.species = species;
     }
     
@@ -92,6 +103,7 @@ public class Animal {
     }
     
     public void setBreed(String breed) {
+        dirtyTracker.changed("breed", this.breed, breed);
         this.breed = breed;
     }
     
@@ -100,6 +112,7 @@ public class Animal {
     }
     
     public void setBirthDate(LocalDate birthDate) {
+        dirtyTracker.changed("birthDate", this.birthDate, birthDate);
         this.birthDate = birthDate;
     }
     
@@ -108,6 +121,7 @@ public class Animal {
     }
     
     public void setGender(String gender) {
+        dirtyTracker.changed("gender", this.gender, gender);
         this.gender = gender;
     }
     
@@ -116,6 +130,7 @@ public class Animal {
     }
     
     public void setBox(Box box) {
+        dirtyTracker.changed("box", idOf(this.box), idOf(box));
         this.box = box;
     }
     
@@ -124,6 +139,7 @@ public class Animal {
     }
     
     public void setOwner(Owner owner) {
+        dirtyTracker.changed("owner", idOf(this.owner), idOf(owner));
         this.owner = owner;
     }
     
@@ -138,4 +154,19 @@ public class Animal {
     public void addTreatment(Treatment treatment) {
         this.treatments.add(treatment);
     }
+    
+    /**
+     * Changes made to this animal since it was loaded or saved
+     */
+    public DirtyTracker getDirtyTracker() {
+        return dirtyTracker;
+    }
+    
+    private static Integer idOf(Owner owner) {
+        return owner != null ? owner.getId() : null;
+    }
+    
+    private static Integer idOf(Box box) {
+        return box != null ? box.getId() : null;
+    }
 } 
\ No newline at end of file
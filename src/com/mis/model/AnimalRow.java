@@ -0,0 +1,79 @@
+package com.mis.model;
+
+import java.time.LocalDate;
+
+/**
+ * One line of the animal list: the animal's own columns, the names of its owner
+ * and box, and its vaccination status, read by a single query instead of the
+ * full Animal graph
+ */
+public class AnimalRow {
+    private final int id;
+    private final String name;
+    private final String species;
+    private final String breed;
+    private final LocalDate birthDate;
+    private final String gender;
+    private final String ownerName;
+    private final String boxName;
+    private final boolean vaccinationUpToDate;
+    
+    public AnimalRow(int id, String name, String species, String breed, LocalDate birthDate, String gender,
+                     String ownerName, String boxName, boolean vaccinationUpToDate) {
+        this.id = id;
+        this.name = name;
+        this.species = species;
+        this.breed = breed;
+        this.birthDate = birthDate;
+        this.gender = gender;
+        this.ownerName = ownerName;
+        this.boxName = boxName;
+        this.vaccinationUpToDate = vaccinationUpToDate;
+    }
+    
+    // Getters
+    public int getId() {
+        return id;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public String getSpecies() {
+        return species;
+    }
+    
+    public String getBreed() {
+        return breed;
+    }
+    
+    public LocalDate getBirthDate() {
+        return birthDate;
+    }
+    
+    public String getGender() {
+        return gender;
+    }
+    
+    /**
+     * Full name of the owner, or null when the animal has none
+     */
+    public String getOwnerName() {
+        return ownerName;
+    }
+    
+    /**
+     * Name of the box, or null when the animal is not in one
+     */
+    public String getBoxName() {
+        return boxName;
+    }
+    
+    /**
+     * Same as {@link Animal#isVaccinationUpToDate()}: no vaccine is overdue
+     */
+    public boolean isVaccinationUpToDate() {
+        return vaccinationUpToDate;
+    }
+}
\ No newline at end of file
@@ -9,6 +9,7 @@ public class Box {
     private String location;
     private BoxStatus status;
     private Animal currentAnimal;
+    private DirtyTracker dirtyTracker = new DirtyTracker();
     
     public Box() {
     }
@@ -20,13 +21,22 @@ public class Box {
         this.status = BoxStatus.AVAILABLE;
     }
     
+    /**
+     * Copy the fields of another box, without its current animal
+     */
+    public Box(Box other) {
+        this(other.id, other.name, other.location);
+        this.status = other.status;
+        this.dirtyTracker = new DirtyTracker(other.dirtyTracker);
+    }
+    
     public boolean isAvailable() {
         return status == BoxStatus.AVAILABLE;
     }
     
     public void assignAnimal(Animal animal) {
         this.currentAnimal = animal;
-        this.status = BoxStatus.OCCUPIED;
+        setStatus(BoxStatus.OCCUPIED);
         animal.setBox(this);
     }
     
@@ -34,7 +44,7 @@ public class Box {
         if (this.currentAnimal != null) {
             this.currentAnimal.setBox(null);
             this.currentAnimal = null;
-            this.status = BoxStatus.AVAILABLE;
+            setStatus(BoxStatus.AVAILABLE);
         }
     }
     
@@ -52,6 +62,7 @@ public class Box {
     }
     
     public void setName(String name) {
+        dirtyTracker.changed("name", this.name, name);
         this.name = name;
     }
     
@@ -60,6 +71,7 @@ public class Box {
     }
     
     public void setLocation(String location) {
+        dirtyTracker.changed("location", this.location, location);
         this.location = location;
     }
     
@@ -68,6 +80,7 @@ public class Box {
     }
     
     public void setStatus(BoxStatus status) {
+        dirtyTracker.changed("status", this.status, status);
         this.status = status;
     }
     
@@ -78,4 +91,11 @@ public class Box {
     public void setCurrentAnimal(Animal currentAnimal) {
         this.currentAnimal = currentAnimal;
     }
+    
+    /**
+     * Changes made to this box since it was loaded or saved
+     */
+    public DirtyTracker getDirtyTracker() {
+        return dirtyTracker;
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,74 @@
+package com.mis.model;
+
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Records which fields of an entity changed since it was loaded or saved, so
+ * that updates only write those columns.
+ * <p>
+ * Fields are named after the bean property ("name", "birthDate", "owner"...).
+ * A tracker starts untracked, for entities built by hand: every field then
+ * counts as changed. The DAOs call {@link #markClean()} once an entity matches
+ * its row, which starts tracking.
+ */
+public class DirtyTracker {
+    private Set<String> dirtyFields;
+    
+    public DirtyTracker() {
+    }
+    
+    /**
+     * Copy the state of another tracker
+     */
+    public DirtyTracker(DirtyTracker other) {
+        this.dirtyFields = other.dirtyFields != null ? new HashSet<>(other.dirtyFields) : null;
+    }
+    
+    /**
+     * Record a field assignment; the field is only marked as changed when the
+     * value differs
+     */
+    public void changed(String field, Object oldValue, Object newValue) {
+        if (dirtyFields != null && !Objects.equals(oldValue, newValue)) {
+            dirtyFields.add(field);
+        }
+    }
+    
+    /**
+     * Whether a field has to be written: always true when untracked
+     */
+    public boolean isDirty(String field) {
+        return dirtyFields == null || dirtyFields.contains(field);
+    }
+    
+    /**
+     * Whether anything has to be written: always true when untracked
+     */
+    public boolean hasChanges() {
+        return dirtyFields == null || !dirtyFields.isEmpty();
+    }
+    
+    public boolean isTracking() {
+        return dirtyFields != null;
+    }
+    
+    /**
+     * A copy of the changed fields, empty when untracked
+     */
+    public Set<String> getDirtyFields() {
+        return dirtyFields != null ? new HashSet<>(dirtyFields) : new HashSet<>();
+    }
+    
+    /**
+     * Mark the entity as matching its row and start tracking changes
+     */
+    public void markClean() {
+        if (dirtyFields == null) {
+            dirtyFields = new HashSet<>();
+        } else {
+            dirtyFields.clear();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,56 @@
+package com.mis.model;
+
+import java.time.LocalDate;
+
+/**
+ * A due or overdue treatment together with the few animal fields needed to report it
+ */
+public class OverdueTreatment {
+    private final int treatmentId;
+    private final TreatmentType type;
+    private final String name;
+    private final LocalDate nextDueDate;
+    private final int animalId;
+    private final String animalName;
+    private final String animalSpecies;
+    
+    public OverdueTreatment(int treatmentId, TreatmentType type, String name, LocalDate nextDueDate,
+                            int animalId, String animalName, String animalSpecies) {
+        this.treatmentId = treatmentId;
+        this.type = type;
+        this.name = name;
+        this.nextDueDate = nextDueDate;
+        this.animalId = animalId;
+        this.animalName = animalName;
+        this.animalSpecies = animalSpecies;
+    }
+    
+    // Getters
+    public int getTreatmentId() {
+        return treatmentId;
+    }
+    
+    public TreatmentType getType() {
+        return type;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public LocalDate getNextDueDate() {
+        return nextDueDate;
+    }
+    
+    public int getAnimalId() {
+        return animalId;
+    }
+    
+    public String getAnimalName() {
+        return animalName;
+    }
+    
+    public String getAnimalSpecies() {
+        return animalSpecies;
+    }
+}
\ No newline at end of file
@@ -14,6 +14,7 @@ public class Owner {
     private String phone;
     private String address;
     private List<Animal> animals;
+    private DirtyTracker dirtyTracker = new DirtyTracker();
     
     public Owner() {
         this.animals = new ArrayList<>();
@@ -29,6 +30,14 @@ public class Owner {
         this.address = address;
     }
     
+    /**
+     * Copy the fields of another owner, without its animals
+     */
+    public Owner(Owner other) {
+        this(other.id, other.firstName, other.lastName, other.email, other.phone, other.address);
+        this.dirtyTracker = new DirtyTracker(other.dirtyTracker);
+    }
+    
     public void addAnimal(Animal animal) {
         this.animals.add(animal);
         animal.setOwner(this);
@@ -55,6 +64,7 @@ public class Owner {
     }
     
     public void setFirstName(String firstName) {
+        dirtyTracker.changed("firstName", this.firstName, firstName);
         this.firstName = firstName;
     }
     
@@ -63,6 +73,7 @@ public class Owner {
     }
     
     public void setLastName(String lastName) {
+        dirtyTracker.changed("lastName", this.lastName, lastName);
         this.lastName = lastName;
     }
     
@@ -75,6 +86,7 @@ public class Owner {
     }
     
     public void setEmail(String email) {
+        dirtyTracker.changed("email", this.email, email);
         this.email = email;
     }
     
@@ -83,6 +95,7 @@ public class Owner {
     }
     
     public void setPhone(String phone) {
+        dirtyTracker.changed("phone", this.phone, phone);
         this.phone = phone;
     }
     
@@ -91,6 +104,7 @@ public class Owner {
     }
     
     public void setAddress(String address) {
+        dirtyTracker.changed("address", this.address, address);
         this.address = address;
     }
     
@@ -101,4 +115,11 @@ public class Owner {
     public void setAnimals(List<Animal> animals) {
         this.animals = animals;
     }
+    
+    /**
+     * Changes made to this owner since it was loaded or saved
+     */
+    public DirtyTracker getDirtyTracker() {
+        return dirtyTracker;
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,55 @@
+package com.mis.model;
+
+/**
+ * One line of the owner list: the owner's own columns and the number of
+ * animals they own, read by a single query instead of the owners' animals
+ */
+public class OwnerRow {
+    private final int id;
+    private final String firstName;
+    private final String lastName;
+    private final String email;
+    private final String phone;
+    private final String address;
+    private final int animalCount;
+    
+    public OwnerRow(int id, String firstName, String lastName, String email, String phone, String address,
+                    int animalCount) {
+        this.id = id;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+        this.phone = phone;
+        this.address = address;
+        this.animalCount = animalCount;
+    }
+    
+    // Getters
+    public int getId() {
+        return id;
+    }
+    
+    public String getFirstName() {
+        return firstName;
+    }
+    
+    public String getLastName() {
+        return lastName;
+    }
+    
+    public String getEmail() {
+        return email;
+    }
+    
+    public String getPhone() {
+        return phone;
+    }
+    
+    public String getAddress() {
+        return address;
+    }
+    
+    public int getAnimalCount() {
+        return animalCount;
+    }
+}
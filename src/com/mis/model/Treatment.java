@@ -13,6 +13,7 @@ public class Treatment {
     private LocalDate administrationDate;
     private LocalDate nextDueDate;
     private boolean administered;
+    private DirtyTracker dirtyTracker = new DirtyTracker();
     
     public Treatment() {
     }
@@ -28,13 +29,22 @@ public class Treatment {
         this.administered = false;
     }
     
+    /**
+     * Copy the fields of another treatment
+     */
+    public Treatment(Treatment other) {
+        this(other.id, other.type, other.name, other.description, other.administrationDate, other.nextDueDate);
+        this.administered = other.administered;
+        this.dirtyTracker = new DirtyTracker(other.dirtyTracker);
+    }
+    
     public boolean isOverdue() {
         return nextDueDate != null && LocalDate.now().isAfter(nextDueDate);
     }
     
     public void administer() {
-        this.administered = true;
-        this.administrationDate = LocalDate.now();
+        setAdministered(true);
+        setAdministrationDate(LocalDate.now());
     }
     
     // Getters and setters
@@ -51,6 +61,7 @@ public class Treatment {
     }
     
     public void setType(TreatmentType type) {
+        dirtyTracker.changed("type", this.type, type);
         this.type = type;
     }
     
@@ -59,6 +70,7 @@ public class Treatment {
     }
     
     public void setName(String name) {
+        dirtyTracker.changed("name", this.name, name);
         this.name = name;
     }
     
@@ -67,6 +79,7 @@ public class Treatment {
     }
     
     public void setDescription(String description) {
+        dirtyTracker.changed("description", this.description, description);
         this.description = description;
     }
     
@@ -75,6 +88,7 @@ public class Treatment {
     }
     
     public void setAdministrationDate(LocalDate administrationDate) {
+        dirtyTracker.changed("administrationDate", this.administrationDate, administrationDate);
         this.administrationDate = administrationDate;
     }
     
@@ -83,6 +97,7 @@ public class Treatment {
     }
     
     public void setNextDueDate(LocalDate nextDueDate) {
+        dirtyTracker.changed("nextDueDate", this.nextDueDate, nextDueDate);
         this.nextDueDate = nextDueDate;
     }
     
@@ -91,6 +106,14 @@ public class Treatment {
     }
     
     public void setAdministered(boolean administered) {
+        dirtyTracker.changed("administered", this.administered, administered);
         this.administered = administered;
     }
+    
+    /**
+     * Changes made to this treatment since it was loaded or saved
+     */
+    public DirtyTracker getDirtyTracker() {
+        return dirtyTracker;
+    }
 } 
\ No newline at end of file
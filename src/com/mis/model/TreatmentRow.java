@@ -0,0 +1,77 @@
+package com.mis.model;
+
+import java.time.LocalDate;
+
+/**
+ * One line of the treatment list: a treatment with the name of its animal,
+ * read without loading the animals
+ */
+public class TreatmentRow {
+    private final int id;
+    private final int animalId;
+    private final String animalName;
+    private final TreatmentType type;
+    private final String name;
+    private final String description;
+    private final LocalDate administrationDate;
+    private final LocalDate nextDueDate;
+    private final boolean administered;
+    
+    public TreatmentRow(int id, int animalId, String animalName, TreatmentType type, String name,
+                        String description, LocalDate administrationDate, LocalDate nextDueDate,
+                        boolean administered) {
+        this.id = id;
+        this.animalId = animalId;
+        this.animalName = animalName;
+        this.type = type;
+        this.name = name;
+        this.description = description;
+        this.administrationDate = administrationDate;
+        this.nextDueDate = nextDueDate;
+        this.administered = administered;
+    }
+    
+    /**
+     * Same as {@link Treatment#isOverdue()}
+     */
+    public boolean isOverdue() {
+        return nextDueDate != null && LocalDate.now().isAfter(nextDueDate);
+    }
+    
+    // Getters
+    public int getId() {
+        return id;
+    }
+    
+    public int getAnimalId() {
+        return animalId;
+    }
+    
+    public String getAnimalName() {
+        return animalName;
+    }
+    
+    public TreatmentType getType() {
+        return type;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public String getDescription() {
+        return description;
+    }
+    
+    public LocalDate getAdministrationDate() {
+        return administrationDate;
+    }
+    
+    public LocalDate getNextDueDate() {
+        return nextDueDate;
+    }
+    
+    public boolean isAdministered() {
+        return administered;
+    }
+}
\ No newline at end of file
@@ -12,7 +12,6 @@ import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.util.List;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
@@ -25,12 +24,13 @@ import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
 import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.DefaultTableModel;
 
 import com.mis.api.AnimalController;
 import com.mis.model.Animal;
+import com.mis.model.AnimalRow;
 import com.mis.model.Box;
 import com.mis.model.Owner;
+import com.mis.model.Treatment;
 import com.mis.util.Messages;
 
 /**
@@ -43,7 +43,7 @@ public class AnimalPanel extends JPanel {
     private AnimalController animalController;
     
     private JTable animalTable;
-    private DefaultTableModel tableModel;
+    private PagedTableModel<AnimalRow> tableModel;
     private JButton addButton;
     private JButton editButton;
     private JButton deleteButton;
@@ -68,15 +68,11 @@ public class AnimalPanel extends JPanel {
     private void initializeUI() {
         setLayout(new BorderLayout());
         
-        // Create table model
-        tableModel = new DefaultTableModel() {
-            private static final long serialVersionUID = 1L;
-            
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        // Create table model; only the rows in view are read from the database
+        tableModel = new PagedTableModel<>(this, AnimalRow::getId, AnimalPanel::toRowData,
+                Messages.getString("error.loading.animals"), Messages.getString("database.error"));
+        tableModel.followChanges(Animal.class);
+        tableModel.refreshOnChanges(Owner.class, Box.class, Treatment.class);
         
         // Add columns to table model
         tableModel.addColumn("ID");
@@ -117,6 +113,7 @@ public class AnimalPanel extends JPanel {
         buttonPanel.add(assignBoxButton);
         buttonPanel.add(assignOwnerButton);
         buttonPanel.add(treatmentsButton);
+        buttonPanel.add(tableModel.getProgressBar());
         
         add(buttonPanel, BorderLayout.SOUTH);
         
@@ -154,9 +151,7 @@ public class AnimalPanel extends JPanel {
                 if (confirm == JOptionPane.YES_OPTION) {
                     try {
                         boolean success = animalController.deleteAnimal(animalId);
-                        if (success) {
-                            refreshData();
-                        } else {
+                        if (!success) {
                             JOptionPane.showMessageDialog(this,
                                     "Échec de la suppression de l'animal.",
                                     Messages.getString("error"), JOptionPane.ERROR_MESSAGE);
@@ -223,39 +218,32 @@ public class AnimalPanel extends JPanel {
      * Refresh data in the table
      */
     public void refreshData() {
-        tableModel.setRowCount(0);
+        // The list only needs a few columns; full animals are loaded when a dialog opens
+        tableModel.load(animalController::getAnimalRowIds, animalController::getAnimalRowsByIds, true);
+    }
+    
+    /**
+     * Convert an animal to a table row
+     */
+    private static Object[] toRowData(AnimalRow animal) {
+        Object[] rowData = new Object[9];
+        rowData[0] = animal.getId();
+        rowData[1] = animal.getName();
+        rowData[2] = animal.getSpecies();
+        rowData[3] = animal.getBreed();
+        rowData[4] = animal.getBirthDate() != null ? animal.getBirthDate().toString() : "";
+        rowData[5] = animal.getGender();
         
-        try {
-            List<Animal> animals = animalController.getAllAnimals();
-            
-            for (Animal animal : animals) {
-                Object[] rowData = new Object[9];
-                rowData[0] = animal.getId();
-                rowData[1] = animal.getName();
-                rowData[2] = animal.getSpecies();
-                rowData[3] = animal.getBreed();
-                rowData[4] = animal.getBirthDate() != null ? animal.getBirthDate().toString() : "";
-                rowData[5] = animal.getGender();
-                
-                // Box information
-                Box box = animal.getBox();
-                rowData[6] = box != null ? box.getName() : "";
-                
-                // Owner information
-                Owner owner = animal.getOwner();
-                rowData[7] = owner != null ? owner.getFullName() : "";
-                
-                // Vaccination status
-                rowData[8] = animal.isVaccinationUpToDate();
-                
-                tableModel.addRow(rowData);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this,
-                    Messages.getString("error.loading.animals") + ": " + e.getMessage(),
-                    Messages.getString("database.error"), JOptionPane.ERROR_MESSAGE);
-        }
+        // Box information
+        rowData[6] = animal.getBoxName() != null ? animal.getBoxName() : "";
+        
+        // Owner information
+        rowData[7] = animal.getOwnerName() != null ? animal.getOwnerName() : "";
+        
+        // Vaccination status
+        rowData[8] = animal.isVaccinationUpToDate();
+        
+        return rowData;
     }
     
     /**
@@ -410,9 +398,7 @@ public class AnimalPanel extends JPanel {
                     success = createdAnimal != null;
                 }
                 
-                if (success) {
-                    refreshData();
-                } else {
+                if (!success) {
                     JOptionPane.showMessageDialog(this,
                             "Échec de l'opération sur l'animal.",
                             Messages.getString("error"), JOptionPane.ERROR_MESSAGE);
@@ -10,7 +10,6 @@ import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.sql.SQLException;
-import java.util.List;
 
 import javax.swing.JButton;
 import javax.swing.JComboBox;
@@ -22,7 +21,6 @@ import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
 import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.DefaultTableModel;
 
 import com.mis.db.BoxDAO;
 import com.mis.model.Box;
@@ -38,7 +36,7 @@ public class BoxPanel extends JPanel {
     private BoxDAO boxDAO;
     
     private JTable boxTable;
-    private DefaultTableModel tableModel;
+    private PagedTableModel<Box> tableModel;
     private JButton addButton;
     private JButton editButton;
     private JButton deleteButton;
@@ -50,14 +48,9 @@ public class BoxPanel extends JPanel {
         setLayout(new BorderLayout());
         
         // Create table model
-        tableModel = new DefaultTableModel() {
-            private static final long serialVersionUID = 1L;
-            
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        tableModel = new PagedTableModel<>(this, Box::getId, BoxPanel::toRowData,
+                "Error loading boxes", "Database Error");
+        tableModel.followChanges(Box.class);
         
         tableModel.addColumn("ID");
         tableModel.addColumn("Name");
@@ -87,6 +80,7 @@ public class BoxPanel extends JPanel {
         buttonPanel.add(addButton);
         buttonPanel.add(editButton);
         buttonPanel.add(deleteButton);
+        buttonPanel.add(tableModel.getProgressBar());
         
         add(buttonPanel, BorderLayout.SOUTH);
         
@@ -143,9 +137,7 @@ public class BoxPanel extends JPanel {
                     if (confirm == JOptionPane.YES_OPTION) {
                         try {
                             boolean success = boxDAO.delete(boxId);
-                            if (success) {
-                                refreshData();
-                            } else {
+                            if (!success) {
                                 JOptionPane.showMessageDialog(BoxPanel.this,
                                         "Failed to delete box.",
                                         "Delete Error", JOptionPane.ERROR_MESSAGE);
@@ -173,34 +165,28 @@ public class BoxPanel extends JPanel {
      * Refresh data in the table
      */
     public void refreshData() {
-        tableModel.setRowCount(0);
+        tableModel.load(boxDAO::getIds, ids -> boxDAO.getByIds(ids).values(), true);
+    }
+    
+    /**
+     * Convert a box to a table row
+     */
+    private static Object[] toRowData(Box box) {
+        Object[] rowData = new Object[5];
+        rowData[0] = box.getId();
+        rowData[1] = box.getName();
+        rowData[2] = box.getLocation();
+        rowData[3] = box.getStatus().toString();
         
-        try {
-            List<Box> boxes = boxDAO.getAll();
-            
-            for (Box box : boxes) {
-                Object[] rowData = new Object[5];
-                rowData[0] = box.getId();
-                rowData[1] = box.getName();
-                rowData[2] = box.getLocation();
-                rowData[3] = box.getStatus().toString();
-                
-                // Current animal info
-                if (box.getCurrentAnimal() != null) {
-                    rowData[4] = box.getCurrentAnimal().getName() + " (" + 
-                                 box.getCurrentAnimal().getSpecies() + ")";
-                } else {
-                    rowData[4] = "";
-                }
-                
-                tableModel.addRow(rowData);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this,
-                    "Error loading boxes: " + e.getMessage(),
-                    "Database Error", JOptionPane.ERROR_MESSAGE);
+        // Current animal info
+        if (box.getCurrentAnimal() != null) {
+            rowData[4] = box.getCurrentAnimal().getName() + " (" + 
+                         box.getCurrentAnimal().getSpecies() + ")";
+        } else {
+            rowData[4] = "";
         }
+        
+        return rowData;
     }
     
     /**
@@ -280,9 +266,7 @@ public class BoxPanel extends JPanel {
                     box.setStatus(status);
                     
                     boolean success = boxDAO.update(box);
-                    if (success) {
-                        refreshData();
-                    } else {
+                    if (!success) {
                         JOptionPane.showMessageDialog(this,
                                 "Failed to update box.",
                                 "Update Error", JOptionPane.ERROR_MESSAGE);
@@ -295,9 +279,7 @@ public class BoxPanel extends JPanel {
                     newBox.setStatus(status);
                     
                     int boxId = boxDAO.save(newBox);
-                    if (boxId > 0) {
-                        refreshData();
-                    } else {
+                    if (boxId <= 0) {
                         JOptionPane.showMessageDialog(this,
                                 "Failed to add box.",
                                 "Add Error", JOptionPane.ERROR_MESSAGE);
@@ -2,12 +2,18 @@ package com.mis.ui;
 
 import java.awt.BorderLayout;
 import java.awt.CardLayout;
+import java.awt.Cursor;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
+import javax.swing.JComboBox;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
@@ -15,10 +21,14 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
+import javax.swing.border.EmptyBorder;
 
 import com.mis.api.AnimalController;
+import com.mis.api.TreatmentReminder;
+import com.mis.api.TreatmentReminderEngine;
 import com.mis.db.DatabaseConnection;
-import com.mis.model.Animal;
+import com.mis.db.DatabaseProfile;
+import com.mis.model.OverdueTreatment;
 import com.mis.util.Messages;
 
 /**
@@ -30,17 +40,30 @@ public class MainWindow extends JFrame {
     private JPanel contentPanel;
     private CardLayout cardLayout;
     private AnimalController animalController;
+    private TreatmentReminderEngine reminderEngine;
     
+    // Reminders fired after startup wait in the status bar until the user opens them
+    private JLabel reminderStatus;
+    private final List<TreatmentReminder> pendingReminders = new ArrayList<>();
+    private boolean remindersStarted;
+    
+    // Panels are created the first time they are shown
     private AnimalPanel animalPanel;
     private BoxPanel boxPanel;
     private TreatmentPanel treatmentPanel;
     private OwnerPanel ownerPanel;
     
+    private final long startupStart = System.nanoTime();
+    private long startupPhaseStart = startupStart;
+    
     public MainWindow() {
         initializeDatabase();
+        logStartupPhase("database");
         initializeControllers();
         initializeUI();
-        checkOverdueTreatments();
+        logStartupPhase("window");
+        showPanel("animals");
+        logStartupPhase("animal panel");
     }
     
     /**
@@ -62,6 +85,7 @@ public class MainWindow extends JFrame {
      */
     private void initializeControllers() {
         this.animalController = new AnimalController();
+        this.reminderEngine = new TreatmentReminderEngine();
     }
     
     /**
@@ -99,10 +123,7 @@ public class MainWindow extends JFrame {
         JMenuItem apiMenuItem = new JMenuItem(Messages.getString("menu.api.external"));
         
         // Listeners pour le menu de configuration
-        dbMenuItem.addActionListener(e -> {
-            // Implémentation à venir
-            JOptionPane.showMessageDialog(this, Messages.getString("config.db.activated"));
-        });
+        dbMenuItem.addActionListener(e -> showDatabaseProfileDialog());
         
         apiMenuItem.addActionListener(e -> {
             String apiUrl = JOptionPane.showInputDialog(this, Messages.getString("config.api.url"), "http://");
@@ -147,34 +168,35 @@ public class MainWindow extends JFrame {
         
         setJMenuBar(menuBar);
         
-        // Create panels
-        animalPanel = new AnimalPanel(this, animalController);
-        boxPanel = new BoxPanel(this);
-        treatmentPanel = new TreatmentPanel(this, animalController);
-        ownerPanel = new OwnerPanel(this);
-        
-        // Add panels to card layout
-        contentPanel.add(animalPanel, "animals");
-        contentPanel.add(boxPanel, "boxes");
-        contentPanel.add(treatmentPanel, "treatments");
-        contentPanel.add(ownerPanel, "owners");
-        
-        // Show the animal panel by default
-        cardLayout.show(contentPanel, "animals");
-        
         // Add content panel to frame
         getContentPane().add(contentPanel, BorderLayout.CENTER);
         
-        // Add window listener for cleanup
+        // Status bar for the reminders fired while the user works
+        reminderStatus = new JLabel();
+        reminderStatus.setBorder(new EmptyBorder(2, 5, 2, 5));
+        reminderStatus.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+        reminderStatus.setVisible(false);
+        reminderStatus.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                showPendingReminders();
+            }
+        });
+        getContentPane().add(reminderStatus, BorderLayout.SOUTH);
+        
+        // Add window listener for the overdue check and cleanup
         addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                logStartupPhase("shown");
+                startTreatmentReminders();
+            }
+            
             @Override
             public void windowClosing(WindowEvent e) {
-                try {
-                    // Close database connection
-                    DatabaseConnection.getInstance().getConnection().close();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
-                }
+                // Stop the reminders and close the pooled database connections
+                reminderEngine.stop();
+                DatabaseConnection.shutdown();
             }
         });
     }
@@ -183,53 +205,182 @@ public class MainWindow extends JFrame {
      * Show the specified panel
      */
     public void showPanel(String panelName) {
+        // A new panel loads its data itself
+        if (!createPanel(panelName)) {
+            if (panelName.equals("animals")) {
+                animalPanel.refreshData();
+            } else if (panelName.equals("boxes")) {
+                boxPanel.refreshData();
+            } else if (panelName.equals("treatments")) {
+                treatmentPanel.refreshData();
+            } else if (panelName.equals("owners")) {
+                ownerPanel.refreshData();
+            }
+        }
+        
         cardLayout.show(contentPanel, panelName);
+    }
+    
+    /**
+     * Create the specified panel and add it to the card layout if it was
+     * never shown
+     *
+     * @return whether the panel was created
+     */
+    private boolean createPanel(String panelName) {
+        if (panelName.equals("animals") && animalPanel == null) {
+            animalPanel = new AnimalPanel(this, animalController);
+            contentPanel.add(animalPanel, panelName);
+        } else if (panelName.equals("boxes") && boxPanel == null) {
+            boxPanel = new BoxPanel(this);
+            contentPanel.add(boxPanel, panelName);
+        } else if (panelName.equals("treatments") && treatmentPanel == null) {
+            treatmentPanel = new TreatmentPanel(this, animalController);
+            contentPanel.add(treatmentPanel, panelName);
+        } else if (panelName.equals("owners") && ownerPanel == null) {
+            ownerPanel = new OwnerPanel(this);
+            contentPanel.add(ownerPanel, panelName);
+        } else {
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Log how long the startup phase that just ended took
+     */
+    private void logStartupPhase(String phase) {
+        long now = System.nanoTime();
+        System.err.printf("Startup: %s in %d ms (%d ms since start)%n", phase,
+                (now - startupPhaseStart) / 1_000_000, (now - startupStart) / 1_000_000);
+        startupPhaseStart = now;
+    }
+    
+    /**
+     * Show the active database performance profile and let the user switch it
+     */
+    private void showDatabaseProfileDialog() {
+        DatabaseConnection database = DatabaseConnection.getInstance();
+        
+        JComboBox<DatabaseProfile> profileCombo = new JComboBox<>(DatabaseProfile.values());
+        profileCombo.setSelectedItem(database.getProfile());
+        
+        JPanel panel = new JPanel(new BorderLayout(5, 5));
+        panel.add(new JLabel(Messages.getString("config.db.profile") + ":"), BorderLayout.NORTH);
+        panel.add(profileCombo, BorderLayout.CENTER);
+        
+        int result = JOptionPane.showConfirmDialog(this, panel,
+                Messages.getString("menu.db.local"), JOptionPane.OK_CANCEL_OPTION);
         
-        // Refresh the panel data
-        if (panelName.equals("animals")) {
-            animalPanel.refreshData();
-        } else if (panelName.equals("boxes")) {
-            boxPanel.refreshData();
-        } else if (panelName.equals("treatments")) {
-            treatmentPanel.refreshData();
-        } else if (panelName.equals("owners")) {
-            ownerPanel.refreshData();
+        if (result == JOptionPane.OK_OPTION) {
+            DatabaseProfile selected = (DatabaseProfile) profileCombo.getSelectedItem();
+            if (selected != database.getProfile()) {
+                database.setProfile(selected);
+            }
+            JOptionPane.showMessageDialog(this, Messages.getString("config.db.activated") + "\n"
+                    + Messages.getString("config.db.profile.active") + ": " + selected.getName());
         }
     }
     
     /**
-     * Check for animals with overdue treatments
+     * Start warning about treatments as they become due or overdue; the
+     * treatments already overdue are warned about once they are read
      */
-    private void checkOverdueTreatments() {
-        try {
-            List<Animal> animalsWithOverdueTreatments = animalController.getAnimalsWithOverdueTreatments();
-            
-            if (!animalsWithOverdueTreatments.isEmpty()) {
-                StringBuilder message = new StringBuilder();
-                message.append(Messages.getString("treatment.overdue")).append("\n\n");
-                
-                for (Animal animal : animalsWithOverdueTreatments) {
-                    message.append(animal.getName()).append(" (").append(animal.getSpecies()).append(")\n");
-                    animal.getOverdueTreatments().forEach(t -> 
-                        message.append("- ").append(t.getName())
-                              .append(" (").append(t.getType()).append(") due on ")
-                              .append(t.getNextDueDate()).append("\n")
-                    );
+    private void startTreatmentReminders() {
+        reminderEngine.addListener(reminders -> SwingUtilities.invokeLater(() -> remindersFired(reminders)));
+        // The reminders of the treatments read at startup are delivered before this completes
+        reminderEngine.start().whenComplete((count, error) ->
+                SwingUtilities.invokeLater(() -> {
+                    remindersStarted = true;
+                    logStartupPhase("treatment reminders");
+                    if (error != null) {
+                        error.printStackTrace();
+                        JOptionPane.showMessageDialog(this, 
+                                Messages.getString("treatment.update.error") + ": " + error.getMessage(),
+                                Messages.getString("database.error"), JOptionPane.ERROR_MESSAGE);
+                    }
+                }));
+    }
+    
+    /**
+     * Warn about the treatments due or overdue at startup right away; later
+     * reminders only show in the status bar, so as not to interrupt the user
+     */
+    private void remindersFired(List<TreatmentReminder> reminders) {
+        if (!remindersStarted) {
+            showReminders(reminders);
+            return;
+        }
+        
+        pendingReminders.addAll(reminders);
+        reminderStatus.setText(Messages.getString("treatment.reminders") + " (" + pendingReminders.size() + ")");
+        reminderStatus.setVisible(true);
+    }
+    
+    /**
+     * Show the reminders waiting in the status bar
+     */
+    private void showPendingReminders() {
+        List<TreatmentReminder> reminders = new ArrayList<>(pendingReminders);
+        pendingReminders.clear();
+        reminderStatus.setVisible(false);
+        if (!reminders.isEmpty()) {
+            showReminders(reminders);
+        }
+    }
+    
+    /**
+     * Warn about treatments that became due or overdue and show the treatments panel
+     */
+    private void showReminders(List<TreatmentReminder> reminders) {
+        List<OverdueTreatment> overdue = new ArrayList<>();
+        List<OverdueTreatment> due = new ArrayList<>();
+        for (TreatmentReminder reminder : reminders) {
+            if (reminder.getKind() == TreatmentReminder.Kind.OVERDUE) {
+                overdue.add(reminder.getTreatment());
+            } else {
+                due.add(reminder.getTreatment());
+            }
+        }
+        
+        StringBuilder message = new StringBuilder();
+        if (!overdue.isEmpty()) {
+            appendTreatments(message, Messages.getString("treatment.overdue"), overdue);
+        }
+        if (!due.isEmpty()) {
+            appendTreatments(message, Messages.getString("treatment.due"), due);
+        }
+        
+        JOptionPane.showMessageDialog(this, message.toString(), 
+                Messages.getString("warning"), JOptionPane.WARNING_MESSAGE);
+        
+        // Show treatments panel
+        showPanel("treatments");
+    }
+    
+    /**
+     * Append a heading and treatments grouped by animal to a warning
+     */
+    private static void appendTreatments(StringBuilder message, String heading, List<OverdueTreatment> treatments) {
+        message.append(heading).append("\n\n");
+        
+        // Reminders fired at different times are grouped by animal again
+        treatments.sort(Comparator.comparingInt(OverdueTreatment::getAnimalId)
+                .thenComparing(OverdueTreatment::getNextDueDate));
+        int currentAnimalId = -1;
+        for (OverdueTreatment t : treatments) {
+            if (t.getAnimalId() != currentAnimalId) {
+                if (currentAnimalId != -1) {
                     message.append("\n");
                 }
-                
-                JOptionPane.showMessageDialog(this, message.toString(), 
-                        Messages.getString("warning"), JOptionPane.WARNING_MESSAGE);
-                
-                // Show treatments panel
-                showPanel("treatments");
+                currentAnimalId = t.getAnimalId();
+                message.append(t.getAnimalName()).append(" (").append(t.getAnimalSpecies()).append(")\n");
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, 
-                    Messages.getString("treatment.update.error") + ": " + e.getMessage(),
-                    Messages.getString("database.error"), JOptionPane.ERROR_MESSAGE);
+            message.append("- ").append(t.getName())
+                  .append(" (").append(t.getType()).append(") due on ")
+                  .append(t.getNextDueDate()).append("\n");
         }
+        message.append("\n");
     }
     
     public static void main(String[] args) {
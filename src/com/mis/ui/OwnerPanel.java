@@ -8,6 +8,7 @@ import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.List;
 
 import javax.swing.JButton;
@@ -23,22 +24,25 @@ import javax.swing.table.DefaultTableModel;
 import com.mis.db.OwnerDAO;
 import com.mis.model.Animal;
 import com.mis.model.Owner;
+import com.mis.model.OwnerRow;
 
 /**
  * Panel for managing owners
  */
 public class OwnerPanel extends JPanel {
     private static final long serialVersionUID = 1L;
+    private static final int SEARCH_LIMIT = 200;
     
     private MainWindow mainWindow;
     private OwnerDAO ownerDAO;
     
     private JTable ownerTable;
-    private DefaultTableModel tableModel;
+    private PagedTableModel<OwnerRow> tableModel;
     private JButton addButton;
     private JButton editButton;
     private JButton deleteButton;
     private JButton viewAnimalsButton;
+    private JTextField searchField;
     
     public OwnerPanel(MainWindow mainWindow) {
         this.mainWindow = mainWindow;
@@ -46,15 +50,11 @@ public class OwnerPanel extends JPanel {
         
         setLayout(new BorderLayout());
         
-        // Create table model
-        tableModel = new DefaultTableModel() {
-            private static final long serialVersionUID = 1L;
-            
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        // Create table model; only the rows in view are read from the database
+        tableModel = new PagedTableModel<>(this, OwnerRow::getId, OwnerPanel::toRowData,
+                "Error loading owners", "Database Error");
+        tableModel.followChanges(Owner.class);
+        tableModel.refreshOnChanges(Animal.class);
         
         tableModel.addColumn("ID");
         tableModel.addColumn("First Name");
@@ -73,6 +73,26 @@ public class OwnerPanel extends JPanel {
         JScrollPane scrollPane = new JScrollPane(ownerTable);
         add(scrollPane, BorderLayout.CENTER);
         
+        // Create search panel
+        JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        searchField = new JTextField(25);
+        JButton searchButton = new JButton("Search");
+        JButton clearSearchButton = new JButton("Show All");
+        
+        searchPanel.add(new JLabel("Search:"));
+        searchPanel.add(searchField);
+        searchPanel.add(searchButton);
+        searchPanel.add(clearSearchButton);
+        
+        add(searchPanel, BorderLayout.NORTH);
+        
+        searchField.addActionListener(e -> refreshData());
+        searchButton.addActionListener(e -> refreshData());
+        clearSearchButton.addActionListener(e -> {
+            searchField.setText("");
+            refreshData();
+        });
+        
         // Create button panel
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         
@@ -85,6 +105,7 @@ public class OwnerPanel extends JPanel {
         buttonPanel.add(editButton);
         buttonPanel.add(deleteButton);
         buttonPanel.add(viewAnimalsButton);
+        buttonPanel.add(tableModel.getProgressBar());
         
         add(buttonPanel, BorderLayout.SOUTH);
         
@@ -125,7 +146,16 @@ public class OwnerPanel extends JPanel {
                 int selectedRow = ownerTable.getSelectedRow();
                 if (selectedRow >= 0) {
                     int ownerId = (int) tableModel.getValueAt(selectedRow, 0);
-                    int animalCount = (int) tableModel.getValueAt(selectedRow, 6);
+                    int animalCount;
+                    try {
+                        animalCount = getAnimalCount(selectedRow, ownerId);
+                    } catch (SQLException ex) {
+                        ex.printStackTrace();
+                        JOptionPane.showMessageDialog(OwnerPanel.this,
+                                "Error loading owner: " + ex.getMessage(),
+                                "Database Error", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
                     
                     if (animalCount > 0) {
                         int confirm = JOptionPane.showConfirmDialog(OwnerPanel.this,
@@ -144,9 +174,7 @@ public class OwnerPanel extends JPanel {
                     if (confirm == JOptionPane.YES_OPTION) {
                         try {
                             boolean success = ownerDAO.delete(ownerId);
-                            if (success) {
-                                refreshData();
-                            } else {
+                            if (!success) {
                                 JOptionPane.showMessageDialog(OwnerPanel.this,
                                         "Failed to delete owner.",
                                         "Delete Error", JOptionPane.ERROR_MESSAGE);
@@ -172,22 +200,21 @@ public class OwnerPanel extends JPanel {
                 int selectedRow = ownerTable.getSelectedRow();
                 if (selectedRow >= 0) {
                     int ownerId = (int) tableModel.getValueAt(selectedRow, 0);
-                    int animalCount = (int) tableModel.getValueAt(selectedRow, 6);
                     
-                    if (animalCount > 0) {
-                        try {
+                    try {
+                        if (getAnimalCount(selectedRow, ownerId) > 0) {
                             Owner owner = ownerDAO.getById(ownerId);
                             showOwnerAnimalsDialog(owner);
-                        } catch (SQLException ex) {
-                            ex.printStackTrace();
+                        } else {
                             JOptionPane.showMessageDialog(OwnerPanel.this,
-                                    "Error loading owner's animals: " + ex.getMessage(),
-                                    "Database Error", JOptionPane.ERROR_MESSAGE);
+                                    "This owner has no animals.",
+                                    "No Animals", JOptionPane.INFORMATION_MESSAGE);
                         }
-                    } else {
+                    } catch (SQLException ex) {
+                        ex.printStackTrace();
                         JOptionPane.showMessageDialog(OwnerPanel.this,
-                                "This owner has no animals.",
-                                "No Animals", JOptionPane.INFORMATION_MESSAGE);
+                                "Error loading owner's animals: " + ex.getMessage(),
+                                "Database Error", JOptionPane.ERROR_MESSAGE);
                     }
                 } else {
                     JOptionPane.showMessageDialog(OwnerPanel.this,
@@ -202,34 +229,46 @@ public class OwnerPanel extends JPanel {
     }
     
     /**
-     * Refresh data in the table
+     * Refresh data in the table, with the owners matching the search text if
+     * there is one
      */
     public void refreshData() {
-        tableModel.setRowCount(0);
-        
-        try {
-            List<Owner> owners = ownerDAO.getAll();
-            
-            for (Owner owner : owners) {
-                Object[] rowData = new Object[7];
-                rowData[0] = owner.getId();
-                rowData[1] = owner.getFirstName();
-                rowData[2] = owner.getLastName();
-                rowData[3] = owner.getEmail();
-                rowData[4] = owner.getPhone();
-                rowData[5] = owner.getAddress();
-                rowData[6] = owner.getAnimals().size();
-                
-                tableModel.addRow(rowData);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this,
-                    "Error loading owners: " + e.getMessage(),
-                    "Database Error", JOptionPane.ERROR_MESSAGE);
+        String searchText = searchField.getText().trim();
+        if (searchText.isEmpty()) {
+            tableModel.load(ownerDAO::getIds, ownerDAO::getRowsByIds, true);
+        } else {
+            tableModel.load(() -> ownerDAO.searchIds(searchText, SEARCH_LIMIT), ownerDAO::getRowsByIds, false);
         }
     }
     
+    /**
+     * Get the animal count of a row, read from the database while the row is still loading
+     */
+    private int getAnimalCount(int row, int ownerId) throws SQLException {
+        Object count = tableModel.getValueAt(row, 6);
+        if (count != null) {
+            return (int) count;
+        }
+        List<OwnerRow> rows = ownerDAO.getRowsByIds(Collections.singletonList(ownerId));
+        return rows.isEmpty() ? 0 : rows.get(0).getAnimalCount();
+    }
+    
+    /**
+     * Convert an owner row to a table row
+     */
+    private static Object[] toRowData(OwnerRow owner) {
+        Object[] rowData = new Object[7];
+        rowData[0] = owner.getId();
+        rowData[1] = owner.getFirstName();
+        rowData[2] = owner.getLastName();
+        rowData[3] = owner.getEmail();
+        rowData[4] = owner.getPhone();
+        rowData[5] = owner.getAddress();
+        rowData[6] = owner.getAnimalCount();
+        
+        return rowData;
+    }
+    
     /**
      * Show the add/edit owner dialog
      */
@@ -328,9 +367,7 @@ public class OwnerPanel extends JPanel {
                     owner.setAddress(address.isEmpty() ? null : address);
                     
                     boolean success = ownerDAO.update(owner);
-                    if (success) {
-                        refreshData();
-                    } else {
+                    if (!success) {
                         JOptionPane.showMessageDialog(this,
                                 "Failed to update owner.",
                                 "Update Error", JOptionPane.ERROR_MESSAGE);
@@ -345,9 +382,7 @@ public class OwnerPanel extends JPanel {
                     newOwner.setAddress(address.isEmpty() ? null : address);
                     
                     int ownerId = ownerDAO.save(newOwner);
-                    if (ownerId > 0) {
-                        refreshData();
-                    } else {
+                    if (ownerId <= 0) {
                         JOptionPane.showMessageDialog(this,
                                 "Failed to add owner.",
                                 "Add Error", JOptionPane.ERROR_MESSAGE);
@@ -0,0 +1,448 @@
+package com.mis.ui;
+
+import java.awt.Component;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import javax.swing.JOptionPane;
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+import com.mis.db.DatabaseExecutor;
+import com.mis.db.EntityChangeEvent;
+import com.mis.db.EntityEvents;
+import com.mis.db.SqlCall;
+import com.mis.util.Messages;
+
+/**
+ * Table model that holds only the rows a table shows.
+ * <p>
+ * A load reads the IDs of every row, in display order, into an int array: the
+ * row count is known up front and costs 4 bytes a row. Rows themselves are
+ * read by pages of {@value #PAGE_SIZE} IDs the first time the table asks for
+ * one of their cells, together with the pages next to it, and the last
+ * {@value #MAX_CACHED_ROWS} rows read are kept. Pages are read on the
+ * {@link DatabaseExecutor}; until a page arrives its rows show their ID and
+ * empty cells, so scrolling never waits for the database.
+ * <p>
+ * The model follows the {@link EntityEvents} of its entity: an inserted,
+ * updated or deleted entity costs one row of work instead of a reload.
+ * <p>
+ * A load is cancelled when a newer one starts, and so are the reads in
+ * progress when the owner is hidden (e.g. switching to another card).
+ * <p>
+ * The first column is always the row ID.
+ */
+class PagedTableModel<T> extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    private static final int PAGE_SIZE = 100;
+    private static final int PREFETCH_PAGES = 2;
+    private static final int MAX_CACHED_ROWS = 64 * PAGE_SIZE;
+    // A queued page this far from the last painted one was scrolled past and is not read
+    private static final int SKIP_DISTANCE = 4 * PREFETCH_PAGES;
+    // Cached for an ID that no longer exists, so that it is not read again
+    private static final Object[] MISSING_ROW = new Object[0];
+
+    private final Component owner;
+    private final ToIntFunction<T> idOf;
+    private final Function<T, Object[]> rowMapper;
+    private final String errorMessage;
+    private final String errorTitle;
+    private final List<String> columns = new ArrayList<>();
+    private final JProgressBar progressBar = new JProgressBar();
+
+    private final Map<Integer, Object[]> rows = new LinkedHashMap<Integer, Object[]>(256, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Object[]> eldest) {
+            return size() > MAX_CACHED_ROWS;
+        }
+    };
+    private final Set<Integer> pendingPages = new HashSet<>();
+
+    private int[] ids = new int[0];
+    private SqlCall<int[]> idQuery;
+    private PageQuery<T> pageQuery;
+    private boolean wholeTable;
+    // Rows read before the last reset of the cache are dropped
+    private int generation;
+    private int loadSequence;
+    private CompletableFuture<int[]> idRead;
+    private volatile int paintedPage;
+    // The page whose neighbourhood was last requested; painting it again requests nothing
+    private int requestedAround = -1;
+
+    /**
+     * Reads the rows of some IDs, in any order
+     */
+    @FunctionalInterface
+    interface PageQuery<T> {
+        Collection<T> fetch(List<Integer> ids) throws SQLException;
+    }
+
+    /**
+     * @param owner        the panel showing the table, also the parent of error dialogs
+     * @param idOf         the ID of a row, to place the rows of a page
+     * @param rowMapper    converts a result to a table row; runs in the background
+     * @param errorMessage shown, followed by the exception message, when a load fails
+     */
+    PagedTableModel(Component owner, ToIntFunction<T> idOf, Function<T, Object[]> rowMapper,
+                    String errorMessage, String errorTitle) {
+        this.owner = owner;
+        this.idOf = idOf;
+        this.rowMapper = rowMapper;
+        this.errorMessage = errorMessage;
+        this.errorTitle = errorTitle;
+
+        progressBar.setStringPainted(true);
+        progressBar.setIndeterminate(true);
+        progressBar.setString(Messages.getString("loading") + "...");
+        progressBar.setVisible(false);
+
+        owner.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentHidden(ComponentEvent e) {
+                cancel();
+            }
+        });
+    }
+
+    void addColumn(String name) {
+        columns.add(name);
+        fireTableStructureChanged();
+    }
+
+    /**
+     * The progress bar to place in the panel, shown while IDs are read
+     */
+    JProgressBar getProgressBar() {
+        return progressBar;
+    }
+
+    /**
+     * Apply the changes of the entity shown in the rows, row by row
+     */
+    void followChanges(Class<?> entityType) {
+        EntityEvents.subscribe(entityType, event -> SwingUtilities.invokeLater(() -> applyChange(event)));
+    }
+
+    /**
+     * Read the shown rows again whenever another entity they display something
+     * of changes, e.g. the owner names in the animal list
+     */
+    void refreshOnChanges(Class<?>... entityTypes) {
+        for (Class<?> entityType : entityTypes) {
+            EntityEvents.subscribe(entityType, event -> SwingUtilities.invokeLater(this::refreshRows));
+        }
+    }
+
+    /**
+     * Read the IDs of the rows to show in the background, then show them.
+     * Rows already shown stay until the new IDs arrive; a newer load
+     * supersedes this one.
+     *
+     * @param idQuery    the IDs of the rows, in display order
+     * @param pageQuery  reads the rows of some of these IDs
+     * @param wholeTable whether the IDs are every row of the table in
+     *                   ascending order, so that an inserted row can be
+     *                   placed without reading the IDs again
+     */
+    void load(SqlCall<int[]> idQuery, PageQuery<T> pageQuery, boolean wholeTable) {
+        this.idQuery = idQuery;
+        this.pageQuery = pageQuery;
+        this.wholeTable = wholeTable;
+        readIds(true);
+    }
+
+    private void readIds(boolean clearRows) {
+        int sequence = ++loadSequence;
+        progressBar.setVisible(true);
+
+        // A superseded read is interrupted rather than left to scan the whole table
+        if (idRead != null) {
+            idRead.cancel(true);
+        }
+        idRead = DatabaseExecutor.getInstance().submit(idQuery);
+        idRead.whenComplete((result, error) ->
+                SwingUtilities.invokeLater(() -> {
+                    if (sequence != loadSequence) {
+                        return;
+                    }
+                    progressBar.setVisible(false);
+                    idRead = null;
+
+                    if (error != null) {
+                        error.printStackTrace();
+                        JOptionPane.showMessageDialog(owner,
+                                errorMessage + ": " + error.getMessage(),
+                                errorTitle, JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+
+                    ids = result;
+                    requestedAround = -1;
+                    if (clearRows) {
+                        clearRows();
+                    }
+                    fireTableDataChanged();
+                }));
+    }
+
+    /**
+     * Cancel the ID read in progress, leaving the rows shown so far, and
+     * forget the pages being read so that they are requested again when
+     * next painted
+     */
+    void cancel() {
+        if (idRead != null) {
+            loadSequence++;
+            idRead.cancel(true);
+            idRead = null;
+            progressBar.setVisible(false);
+        }
+        // Pages still in flight are kept when they arrive
+        pendingPages.clear();
+        requestedAround = -1;
+    }
+
+    /**
+     * Apply a change of the entity shown in the rows
+     */
+    void applyChange(EntityChangeEvent event) {
+        if (idQuery == null) {
+            return;
+        }
+        switch (event.getKind()) {
+            case INSERTED:
+                rowInserted(event.getId());
+                break;
+            case UPDATED:
+                rowUpdated(event.getId());
+                break;
+            case DELETED:
+                rowDeleted(event.getId());
+                break;
+            default:
+                // Unknown rows changed: read the IDs and the rows again
+                readIds(true);
+                break;
+        }
+    }
+
+    private void rowInserted(int id) {
+        if (!wholeTable) {
+            // Whether and where the row belongs is up to the ID query
+            readIds(false);
+            return;
+        }
+
+        int index = Arrays.binarySearch(ids, id);
+        if (index >= 0) {
+            return;
+        }
+        index = -index - 1;
+
+        int[] inserted = new int[ids.length + 1];
+        System.arraycopy(ids, 0, inserted, 0, index);
+        inserted[index] = id;
+        System.arraycopy(ids, index, inserted, index + 1, ids.length - index);
+        ids = inserted;
+        requestedAround = -1;
+        fireTableRowsInserted(index, index);
+    }
+
+    private void rowUpdated(int id) {
+        // Only a row that was read is shown with its old values
+        if (rows.get(id) == null || indexOf(id) < 0) {
+            return;
+        }
+
+        int rowGeneration = generation;
+        PageQuery<T> query = pageQuery;
+        List<Integer> rowIds = Collections.singletonList(id);
+
+        DatabaseExecutor.getInstance().submit(() -> toRows(rowIds, query.fetch(rowIds))).whenComplete((result, error) ->
+                SwingUtilities.invokeLater(() -> {
+                    if (rowGeneration != generation) {
+                        return;
+                    }
+                    if (error != null) {
+                        error.printStackTrace();
+                        rows.remove(id);
+                        requestedAround = -1;
+                    } else {
+                        rows.put(id, result.get(id));
+                    }
+                    int index = indexOf(id);
+                    if (index >= 0) {
+                        fireTableRowsUpdated(index, index);
+                    }
+                }));
+    }
+
+    private void rowDeleted(int id) {
+        rows.remove(id);
+        int index = indexOf(id);
+        if (index < 0) {
+            return;
+        }
+
+        int[] remaining = new int[ids.length - 1];
+        System.arraycopy(ids, 0, remaining, 0, index);
+        System.arraycopy(ids, index + 1, remaining, index, ids.length - index - 1);
+        ids = remaining;
+        requestedAround = -1;
+        fireTableRowsDeleted(index, index);
+    }
+
+    /**
+     * Forget every row read and read the shown ones again
+     */
+    void refreshRows() {
+        clearRows();
+        if (ids.length > 0) {
+            fireTableRowsUpdated(0, ids.length - 1);
+        }
+    }
+
+    private void clearRows() {
+        generation++;
+        rows.clear();
+        pendingPages.clear();
+        requestedAround = -1;
+    }
+
+    private int indexOf(int id) {
+        if (wholeTable) {
+            int index = Arrays.binarySearch(ids, id);
+            return index >= 0 ? index : -1;
+        }
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getRowCount() {
+        return ids.length;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columns.get(column);
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int id = ids[row];
+        if (column == 0) {
+            // Every row asks for its first cell, so this is where pages are
+            // requested, once for all the rows of a page
+            int page = row / PAGE_SIZE;
+            paintedPage = page;
+            if (page != requestedAround) {
+                requestedAround = page;
+                for (int i = page - PREFETCH_PAGES; i <= page + PREFETCH_PAGES; i++) {
+                    requestPage(i);
+                }
+            }
+            return id;
+        }
+        Object[] rowData = rows.get(id);
+        return rowData != null && rowData.length > column ? rowData[column] : null;
+    }
+
+    private void requestPage(int page) {
+        int from = page * PAGE_SIZE;
+        if (page < 0 || from >= ids.length || pendingPages.contains(page)) {
+            return;
+        }
+        int to = Math.min(from + PAGE_SIZE, ids.length);
+
+        List<Integer> pageIds = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            if (!rows.containsKey(ids[i])) {
+                pageIds.add(ids[i]);
+            }
+        }
+        if (pageIds.isEmpty()) {
+            return;
+        }
+        pendingPages.add(page);
+
+        int pageGeneration = generation;
+        PageQuery<T> query = pageQuery;
+
+        DatabaseExecutor.getInstance().submit(() -> Math.abs(page - paintedPage) > SKIP_DISTANCE
+                ? null
+                : toRows(pageIds, query.fetch(pageIds))).whenComplete((result, error) ->
+                SwingUtilities.invokeLater(() -> {
+                    if (pageGeneration != generation) {
+                        return;
+                    }
+                    pendingPages.remove(page);
+
+                    if (error != null) {
+                        // The page is requested again the next time it is painted
+                        error.printStackTrace();
+                        requestedAround = -1;
+                        return;
+                    }
+                    if (result != null) {
+                        rows.putAll(result);
+                        // Rows may have moved since the request; repaint where the page is now
+                        int first = Math.min(from, ids.length);
+                        int last = Math.min(to, ids.length) - 1;
+                        if (first <= last) {
+                            fireTableRowsUpdated(first, last);
+                        }
+                    } else {
+                        // Skipped, so it is requested again if scrolled back to
+                        requestedAround = -1;
+                    }
+                }));
+    }
+
+    /**
+     * Map the rows of some IDs; an ID deleted since it was read gets an empty row
+     */
+    private Map<Integer, Object[]> toRows(List<Integer> rowIds, Collection<T> results) {
+        Map<Integer, Object[]> byId = new HashMap<>();
+        for (T result : results) {
+            byId.put(idOf.applyAsInt(result), rowMapper.apply(result));
+        }
+        for (Integer id : rowIds) {
+            byId.putIfAbsent(id, MISSING_ROW);
+        }
+        return byId;
+    }
+}
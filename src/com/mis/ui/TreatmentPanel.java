@@ -21,11 +21,11 @@ import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
-import javax.swing.table.DefaultTableModel;
 
 import com.mis.api.AnimalController;
 import com.mis.model.Animal;
 import com.mis.model.Treatment;
+import com.mis.model.TreatmentRow;
 import com.mis.model.TreatmentType;
 
 /**
@@ -38,7 +38,7 @@ public class TreatmentPanel extends JPanel {
     private AnimalController animalController;
     
     private JTable treatmentTable;
-    private DefaultTableModel tableModel;
+    private PagedTableModel<TreatmentRow> tableModel;
     private JButton addButton;
     private JButton administerButton;
     private JButton filterButton;
@@ -52,15 +52,11 @@ public class TreatmentPanel extends JPanel {
         
         setLayout(new BorderLayout());
         
-        // Create table model
-        tableModel = new DefaultTableModel() {
-            private static final long serialVersionUID = 1L;
-            
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        // Create table model; only the rows in view are read from the database
+        tableModel = new PagedTableModel<>(this, TreatmentRow::getId, TreatmentPanel::toRowData,
+                "Error loading treatments", "Database Error");
+        tableModel.followChanges(Treatment.class);
+        tableModel.refreshOnChanges(Animal.class);
         
         tableModel.addColumn("ID");
         tableModel.addColumn("Animal Name");
@@ -93,6 +89,7 @@ public class TreatmentPanel extends JPanel {
         buttonPanel.add(administerButton);
         buttonPanel.add(filterButton);
         buttonPanel.add(clearFilterButton);
+        buttonPanel.add(tableModel.getProgressBar());
         
         add(buttonPanel, BorderLayout.SOUTH);
         
@@ -142,51 +139,38 @@ public class TreatmentPanel extends JPanel {
      * Refresh data in the table
      */
     public void refreshData() {
-        tableModel.setRowCount(0);
+        Integer animalId = filteredAnimal != null ? filteredAnimal.getId() : null;
+        tableModel.load(() -> animalController.getTreatmentRowIds(animalId), animalController::getTreatmentRowsByIds, false);
+    }
+    
+    /**
+     * Convert a treatment to a table row
+     */
+    private static Object[] toRowData(TreatmentRow treatment) {
+        Object[] rowData = new Object[9];
+        rowData[0] = treatment.getId();
+        rowData[1] = treatment.getAnimalName();
+        rowData[2] = treatment.getType().toString();
+        rowData[3] = treatment.getName();
+        rowData[4] = treatment.getDescription();
+        rowData[5] = treatment.getAdministrationDate() != null ? treatment.getAdministrationDate().toString() : "";
+        rowData[6] = treatment.getNextDueDate() != null ? treatment.getNextDueDate().toString() : "";
+        rowData[7] = treatment.isAdministered() ? "Yes" : "No";
         
-        try {
-            List<Animal> animals;
-            
-            if (filteredAnimal != null) {
-                animals = List.of(animalController.getAnimalById(filteredAnimal.getId()));
-            } else {
-                animals = animalController.getAllAnimals();
-            }
-            
-            for (Animal animal : animals) {
-                for (Treatment treatment : animal.getTreatments()) {
-                    Object[] rowData = new Object[9];
-                    rowData[0] = treatment.getId();
-                    rowData[1] = animal.getName();
-                    rowData[2] = treatment.getType().toString();
-                    rowData[3] = treatment.getName();
-                    rowData[4] = treatment.getDescription();
-                    rowData[5] = treatment.getAdministrationDate() != null ? treatment.getAdministrationDate().toString() : "";
-                    rowData[6] = treatment.getNextDueDate() != null ? treatment.getNextDueDate().toString() : "";
-                    rowData[7] = treatment.isAdministered() ? "Yes" : "No";
-                    
-                    // Status (Overdue, Due Soon, OK)
-                    String status = "OK";
-                    if (treatment.isOverdue()) {
-                        status = "OVERDUE";
-                    } else if (treatment.getNextDueDate() != null) {
-                        LocalDate now = LocalDate.now();
-                        LocalDate oneWeekFromNow = now.plusDays(7);
-                        if (treatment.getNextDueDate().isBefore(oneWeekFromNow)) {
-                            status = "DUE SOON";
-                        }
-                    }
-                    rowData[8] = status;
-                    
-                    tableModel.addRow(rowData);
-                }
+        // Status (Overdue, Due Soon, OK)
+        String status = "OK";
+        if (treatment.isOverdue()) {
+            status = "OVERDUE";
+        } else if (treatment.getNextDueDate() != null) {
+            LocalDate now = LocalDate.now();
+            LocalDate oneWeekFromNow = now.plusDays(7);
+            if (treatment.getNextDueDate().isBefore(oneWeekFromNow)) {
+                status = "DUE SOON";
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this,
-                    "Error loading treatments: " + e.getMessage(),
-                    "Database Error", JOptionPane.ERROR_MESSAGE);
         }
+        rowData[8] = status;
+        
+        return rowData;
     }
     
     /**
@@ -300,9 +284,7 @@ public class TreatmentPanel extends JPanel {
                     Treatment treatment = animalController.addTreatment(
                             selectedAnimal.getId(), selectedType, name, description, dueDate);
                     
-                    if (treatment != null) {
-                        refreshData();
-                    } else {
+                    if (treatment == null) {
                         JOptionPane.showMessageDialog(this,
                                 "Failed to add treatment.",
                                 "Add Error", JOptionPane.ERROR_MESSAGE);
@@ -362,9 +344,7 @@ public class TreatmentPanel extends JPanel {
                 // Administer the treatment
                 boolean success = animalController.administerTreatment(treatmentId, dueDate);
                 
-                if (success) {
-                    refreshData();
-                } else {
+                if (!success) {
                     JOptionPane.showMessageDialog(this,
                             "Failed to administer treatment.",
                             "Administration Error", JOptionPane.ERROR_MESSAGE);